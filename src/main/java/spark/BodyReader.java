@@ -0,0 +1,44 @@
+/*
+* Copyright 2011- Per Wendel
+*
+*  Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package spark;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A BodyReader decodes request bodies into objects, it is the inbound counterpart of {@link ResponseTransformer}.
+ * Readers are given the body as a stream, so a payload can be decoded without being held as a String first:
+ * <pre>
+ * bodyReader("application/json", (body, charset, type) -&gt; gson.fromJson(new InputStreamReader(body, charset), type));
+ *
+ * post("/books", (request, response) -&gt; books.add(request.bodyAs(Book.class)));
+ * </pre>
+ */
+public interface BodyReader {
+
+    /**
+     * Method called for decoding the request body.
+     *
+     * @param body    the request body, the stream is closed by the caller.
+     * @param charset the charset of the request content type, UTF-8 if it names none.
+     * @param type    the type the body is read as.
+     * @return an instance of type.
+     * @throws java.lang.Exception when decoding fails
+     */
+    Object read(InputStream body, Charset charset, Class<?> type) throws Exception;
+
+}
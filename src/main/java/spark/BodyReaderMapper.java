@@ -0,0 +1,102 @@
+/*
+* Copyright 2011- Per Wendel
+*
+*  Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package spark;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link BodyReader}s registered per content type
+ */
+public class BodyReaderMapper {
+
+    private static final String ANY_TYPE = "*/*";
+
+    /**
+     * Holds a default instance for the body reader mapper
+     */
+    private static final BodyReaderMapper DEFAULT_INSTANCE = new BodyReaderMapper();
+
+    /**
+     * Returns the default instance for the body reader mapper
+     *
+     * @return Default instance
+     */
+    public static BodyReaderMapper getInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Holds the readers by lower case media type, without parameters
+     */
+    private final Map<String, BodyReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the given reader to the provided content type. The content type can be a full media type
+     * (application/json), a range (text/*) or any type (*&#47;*). If a reader was already registered to the same
+     * content type, the reader is overwritten.
+     *
+     * @param contentType the content type
+     * @param reader      the reader
+     */
+    public void map(String contentType, BodyReader reader) {
+        readers.put(mediaType(contentType), reader);
+    }
+
+    /**
+     * Returns the reader for a request content type, looking for its media type, then for its range and finally
+     * for any type.
+     *
+     * @param contentType the content type of a request, parameters such as the charset are ignored
+     * @return the reader, or null if none is registered
+     */
+    public BodyReader getReader(String contentType) {
+        if (readers.isEmpty()) {
+            return null;
+        }
+        if (contentType != null) {
+            String mediaType = mediaType(contentType);
+            BodyReader reader = readers.get(mediaType);
+            if (reader != null) {
+                return reader;
+            }
+            int slash = mediaType.indexOf('/');
+            if (slash > 0) {
+                reader = readers.get(mediaType.substring(0, slash + 1) + "*");
+                if (reader != null) {
+                    return reader;
+                }
+            }
+        }
+        return readers.get(ANY_TYPE);
+    }
+
+    /**
+     * Removes all readers
+     */
+    public void clear() {
+        readers.clear();
+    }
+
+    private static String mediaType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String mediaType = semicolon >= 0 ? contentType.substring(0, semicolon) : contentType;
+        return mediaType.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -16,15 +16,140 @@
  */
 package spark;
 
+import spark.route.PathPattern;
+import spark.route.RequestPath;
+import spark.utils.PercentDecoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
+ * A matched route or interceptor. Holds the matched pattern and the segment offsets of the requested path,
+ * route params and splats are only cut out of the requested path when asked for.
+ *
  * @author Per Wendel
  */
 public abstract class Match {
     public final String matchedUri;
     public final String requestUri;
+    public final PathPattern matchedPattern;
+    public final RequestPath requestPath;
+
+    // Decoded param values cut out of the requested path, by slot. Filled in lazily, racing threads compute the
+    // same.
+    private String[] paramValues;
 
     public Match(String matchedUri, String requestUri) {
-        this.matchedUri = matchedUri;
-        this.requestUri = requestUri;
+        this(PathPattern.compile(matchedUri), new RequestPath(requestUri));
+    }
+
+    public Match(PathPattern matchedPattern, RequestPath requestPath) {
+        this.matchedUri = matchedPattern.pattern();
+        this.requestUri = requestPath.path();
+        this.matchedPattern = matchedPattern;
+        this.requestPath = requestPath;
     }
+
+    /**
+     * Gets the percent-decoded value of a route param, the name is matched case insensitively
+     *
+     * @param name the param name, with or without the leading ':'
+     * @return the value or null if there is no such param
+     * @throws IllegalArgumentException if the value is not properly encoded
+     */
+    public String param(String name) {
+        int slot = matchedPattern.paramSlot(name);
+        return slot >= 0 ? param(slot) : null;
+    }
+
+    /**
+     * Gets the percent-decoded value of a route param by its slot, see {@link PathPattern#paramSlot(String)}.
+     * Values are decoded as UTF-8 the first time they are asked for, values without escapes are not decoded.
+     *
+     * @param slot the param slot, i.e. the index of the param in the route pattern
+     * @return the value or null if the requested path is too short to hold the param
+     * @throws IllegalArgumentException if the value is not properly encoded
+     */
+    public String param(int slot) {
+        String[] values = paramValues;
+        if (values == null) {
+            values = new String[matchedPattern.paramCount()];
+            paramValues = values;
+        }
+        String value = values[slot];
+        if (value == null) {
+            int segment = matchedPattern.paramSegment(slot);
+            if (segment >= requestPath.size()) {
+                return null;
+            }
+            value = PercentDecoder.decodePath(requestPath.path(), requestPath.start(segment), requestPath.end(segment));
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of a route param as it was sent, without decoding it
+     *
+     * @param slot the param slot, i.e. the index of the param in the route pattern
+     * @return the value or null if the requested path is too short to hold the param
+     */
+    public String rawParam(int slot) {
+        int segment = matchedPattern.paramSegment(slot);
+        return segment < requestPath.size() ? requestPath.segment(segment) : null;
+    }
+
+    /**
+     * @return all percent-decoded route params, keyed by their lower case name including the leading ':'
+     * @throws IllegalArgumentException if a value is not properly encoded
+     */
+    public Map<String, String> params() {
+        Map<String, String> params = new HashMap<>();
+        for (int slot = 0; slot < matchedPattern.paramCount(); slot++) {
+            String value = param(slot);
+            if (value != null) {
+                params.put(matchedPattern.paramKey(slot), value);
+            }
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * @return the values of the splats. A trailing splat gets the rest of the requested path.
+     */
+    public List<String> splat() {
+        int requestSize = requestPath.size();
+        int matchedSize = matchedPattern.size();
+        int count = Math.min(requestSize, matchedSize);
+
+        List<String> splat = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (matchedPattern.type(i) == PathPattern.SegmentType.SPLAT) {
+                int last = (i == matchedSize - 1) ? requestSize - 1 : i;
+                splat.add(segments(i, last));
+            }
+        }
+        return Collections.unmodifiableList(splat);
+    }
+
+    private String segments(int first, int last) {
+        boolean contiguous = true;
+        for (int i = first; i < last && contiguous; i++) {
+            contiguous = requestPath.end(i) + 1 == requestPath.start(i + 1);
+        }
+        if (contiguous) {
+            return requestPath.path().substring(requestPath.start(first), requestPath.end(last));
+        }
+
+        // Empty segments are skipped, e.g. a//b gives a/b
+        StringBuilder joined = new StringBuilder(requestPath.segment(first));
+        for (int i = first + 1; i <= last; i++) {
+            joined.append('/').append(requestPath.segment(i));
+        }
+        return joined.toString();
+    }
+
 }
@@ -1,8 +1,7 @@
 package spark;
 
-import spark.utils.SparkUtils;
-
-import java.util.List;
+import spark.route.PathPattern;
+import spark.route.RequestPath;
 
 /**
  *
@@ -10,73 +9,11 @@ import java.util.List;
 public class PathMatcher {
 
     public static boolean matches(String p1, String p2) {
-        if (!p1.endsWith("*") && ((p2.endsWith("/") && !p1.endsWith("/")) // NOSONAR
-                || (p1.endsWith("/") && !p2.endsWith("/")))) {
-            // One and not both ends with slash
-            return false;
-        }
-        if (p1.equals(p2)) {
-            // Paths are the same
-            return true;
-        }
-
-        // check params
-        List<String> thisPathList = SparkUtils.convertRouteToList(p1);
-        List<String> pathList = SparkUtils.convertRouteToList(p2);
-
-        int thisPathSize = thisPathList.size();
-        int pathSize = pathList.size();
-
-        if (thisPathSize == pathSize) {
-            for (int i = 0; i < thisPathSize; i++) {
-                String thisPathPart = thisPathList.get(i);
-                String pathPart = pathList.get(i);
-
-                if ((i == thisPathSize - 1) && (thisPathPart.equals("*") && p1.endsWith("*"))) {
-                    // wildcard match
-                    return true;
-                }
-
-                if ((!thisPathPart.startsWith(":"))
-                        && !thisPathPart.equals(pathPart)
-                        && !thisPathPart.equals("*")) {
-                    return false;
-                }
-            }
-            // All parts matched
-            return true;
-        } else {
-            // Number of "path parts" not the same
-            // check wild card:
-            if (p1.endsWith("*")) {
-                if (pathSize == (thisPathSize - 1) && (p2.endsWith("/"))) {
-                    // Hack for making wildcards work with trailing slash
-                    pathList.add("");
-                    pathList.add("");
-                    pathSize += 2;
-                }
+        return matches(PathPattern.compile(p1), new RequestPath(p2));
+    }
 
-                if (thisPathSize < pathSize) {
-                    for (int i = 0; i < thisPathSize; i++) {
-                        String thisPathPart = thisPathList.get(i);
-                        String pathPart = pathList.get(i);
-                        if (thisPathPart.equals("*") && (i == thisPathSize - 1) && p1.endsWith("*")) {
-                            // wildcard match
-                            return true;
-                        }
-                        if (!thisPathPart.startsWith(":")
-                                && !thisPathPart.equals(pathPart)
-                                && !thisPathPart.equals("*")) {
-                            return false;
-                        }
-                    }
-                    // All parts matched
-                    return true;
-                }
-                // End check wild card
-            }
-            return false;
-        }
+    public static boolean matches(PathPattern pattern, RequestPath path) {
+        return pattern.matches(path);
     }
 
 }
@@ -2,11 +2,10 @@ package spark;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This objects represent the parameters sent on a Http Request. <br>
@@ -33,18 +32,26 @@ public class QueryParamsMap {
 
     private static final QueryParamsMap NULL = new NullQueryParamsMap();
 
+    private static final String[] NO_KEYS = new String[0];
+    private static final QueryParamsMap[] NO_CHILDREN = new QueryParamsMap[0];
+
+    // Nodes with more nested keys than this are indexed by a hash map
+    private static final int MAX_SCANNED_KEYS = 8;
+
     /**
-     * Holds the nested keys
+     * Holds the nested keys, in the order they were loaded. Most nodes have a handful of keys, which are found by
+     * scanning the array.
      */
-    private Map<String, QueryParamsMap> queryMap = new HashMap<>();
+    private String[] keys = NO_KEYS;
+    private QueryParamsMap[] children = NO_CHILDREN;
+    private int size;
+    private Map<String, QueryParamsMap> index;
 
     /**
      * Value(s) for this key
      */
     private String[] values;
 
-    private Pattern p = Pattern.compile("\\A[\\[\\]]*([^\\[\\]]+)\\]*");
-
     /**
      * Creates a new QueryParamsMap from and HttpServletRequest. <br>
      * Parses the parameters from request.getParameterMap() <br>
@@ -104,30 +111,60 @@ public class QueryParamsMap {
      * @param value the values
      */
     protected final void loadKeys(String key, String[] value) {
-        String[] parsed = parseKey(key);
+        // One pass over the key, each key level is a run of brackets, a name, and closing brackets
+        QueryParamsMap node = this;
+        int from = 0;
+        int length = key.length();
+        while (true) {
+            int start = from;
+            while (start < length && isBracket(key.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && !isBracket(key.charAt(end))) {
+                end++;
+            }
+            if (end == start) {
+                return;
+            }
+            int next = end;
+            while (next < length && key.charAt(next) == ']') {
+                next++;
+            }
 
-        if (parsed == null) {
-            return;
-        }
+            String name = key.charAt(from) == '[' ? key.substring(from + 1, next - 1) : key.substring(from, next);
+            QueryParamsMap child = node.child(name);
+            if (child == null) {
+                child = new QueryParamsMap();
+                node.addChild(name, child);
+            }
+            node = child;
 
-        if (!queryMap.containsKey(parsed[0])) {
-            queryMap.put(parsed[0], new QueryParamsMap());
-        }
-        if (!parsed[1].isEmpty()) {
-            queryMap.get(parsed[0]).loadKeys(parsed[1], value);
-        } else {
-            queryMap.get(parsed[0]).values = value.clone();
+            if (next == length) {
+                node.values = value.clone();
+                return;
+            }
+            from = next;
         }
     }
 
     protected final String[] parseKey(String key) {
-        Matcher m = p.matcher(key);
-
-        if (m.find()) {
-            return new String[] {cleanKey(m.group()), key.substring(m.end())};
-        } else {
+        int length = key.length();
+        int start = 0;
+        while (start < length && isBracket(key.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < length && !isBracket(key.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
             return null; // NOSONAR
         }
+        while (end < length && key.charAt(end) == ']') {
+            end++;
+        }
+        return new String[] {cleanKey(key.substring(0, end)), key.substring(end)};
     }
 
     protected static String cleanKey(String group) {
@@ -138,6 +175,41 @@ public class QueryParamsMap {
         }
     }
 
+    private static boolean isBracket(char c) {
+        return c == '[' || c == ']';
+    }
+
+    private QueryParamsMap child(String key) {
+        if (index != null) {
+            return index.get(key);
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    private void addChild(String key, QueryParamsMap child) {
+        if (size == keys.length) {
+            int capacity = size == 0 ? 2 : size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+        keys[size] = key;
+        children[size] = child;
+        size++;
+        if (index != null) {
+            index.put(key, child);
+        } else if (size > MAX_SCANNED_KEYS) {
+            index = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                index.put(keys[i], children[i]);
+            }
+        }
+    }
+
     /**
      * Retruns and element fro the specified key. <br>
      * For querystring: <br>
@@ -157,11 +229,8 @@ public class QueryParamsMap {
     public QueryParamsMap get(String... keys) {
         QueryParamsMap ret = this;
         for (String key : keys) {
-            if (ret.queryMap.containsKey(key)) {
-                ret = ret.queryMap.get(key);
-            } else {
-                ret = NULL;
-            }
+            QueryParamsMap child = ret.child(key);
+            ret = child != null ? child : NULL;
         }
         return ret;
     }
@@ -200,7 +269,7 @@ public class QueryParamsMap {
      * @return has keys
      */
     public boolean hasKeys() {
-        return !this.queryMap.isEmpty();
+        return this.size > 0;
     }
 
     /**
@@ -253,9 +322,13 @@ public class QueryParamsMap {
     }
 
     /**
-     * @return the queryMap
+     * @return the nested keys, in the order they were loaded
      */
     Map<String, QueryParamsMap> getQueryMap() {
+        Map<String, QueryParamsMap> queryMap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            queryMap.put(keys[i], children[i]);
+        }
         return queryMap;
     }
 
@@ -279,8 +352,8 @@ public class QueryParamsMap {
     public Map<String, String[]> toMap() {
         Map<String, String[]> map = new HashMap<>();
 
-        for (Entry<String, QueryParamsMap> key : this.queryMap.entrySet()) {
-            map.put(key.getKey(), key.getValue().values);
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], children[i].values);
         }
 
         return map;
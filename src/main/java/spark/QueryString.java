@@ -0,0 +1,244 @@
+/*
+* Copyright 2011- Per Wendel
+*
+*  Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package spark;
+
+import spark.utils.PercentDecoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A view of the query string of a request, parsed on first use from the raw query string only, so reading it
+ * never makes the container parse a form body. Parsing records where names and values are; a value is only
+ * percent-decoded (as UTF-8) when it is asked for, and the typed accessors read numbers and booleans straight
+ * from the query string.
+ */
+public final class QueryString {
+
+    private static final int[] NO_OFFSETS = new int[0];
+
+    private final String query;
+
+    // Four offsets per parameter: name start, name end, value start, value end (value start is -1 without '=')
+    private int[] offsets;
+    private int count;
+
+    QueryString(String query) {
+        this.query = query != null ? query : "";
+    }
+
+    /**
+     * @param name the parameter name
+     * @return the first value of the parameter, decoded, or null if it is not present
+     */
+    public String value(String name) {
+        int i = find(name, 0);
+        return i >= 0 ? decodedValue(i) : null;
+    }
+
+    /**
+     * @param name the parameter name
+     * @return all values of the parameter, decoded, empty if it is not present
+     */
+    public List<String> values(String name) {
+        List<String> values = new ArrayList<>();
+        for (int i = find(name, 0); i >= 0; i = find(name, i + 1)) {
+            values.add(decodedValue(i));
+        }
+        return values;
+    }
+
+    /**
+     * @param name the parameter name
+     * @return true if the parameter is present, with or without a value
+     */
+    public boolean contains(String name) {
+        return find(name, 0) >= 0;
+    }
+
+    /**
+     * @return the decoded names of all parameters, in the order they appear
+     */
+    public Set<String> names() {
+        parse();
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            names.add(decode(offsets[4 * i], offsets[4 * i + 1]));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Reads an int parameter without creating a String for it
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int intValue(String name, int defaultValue) {
+        long value = longValue(name, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Query parameter " + name + " is not an int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a long parameter without creating a String for it
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long longValue(String name, long defaultValue) {
+        int i = find(name, 0);
+        if (i < 0) {
+            return defaultValue;
+        }
+        int start = offsets[4 * i + 2];
+        int end = offsets[4 * i + 3];
+        if (start < 0 || start == end) {
+            return defaultValue;
+        }
+        if (needsDecoding(start, end)) {
+            return Long.parseLong(decode(start, end));
+        }
+        boolean negative = query.charAt(start) == '-';
+        int position = negative || query.charAt(start) == '+' ? start + 1 : start;
+        if (position == end) {
+            throw new NumberFormatException("Query parameter " + name + " is not a number");
+        }
+        // Accumulates negatively, so that Long.MIN_VALUE can be read
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; position < end; position++) {
+            int digit = query.charAt(position) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit || result * 10 < limit + digit) {
+                throw new NumberFormatException("Query parameter " + name + " is not a number");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Reads a boolean parameter without creating a String for it. As with {@link Boolean#parseBoolean(String)},
+     * values other than "true" (ignoring case) are false.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     */
+    public boolean booleanValue(String name, boolean defaultValue) {
+        int i = find(name, 0);
+        if (i < 0) {
+            return defaultValue;
+        }
+        int start = offsets[4 * i + 2];
+        int end = offsets[4 * i + 3];
+        if (start < 0 || start == end) {
+            return defaultValue;
+        }
+        if (needsDecoding(start, end)) {
+            return Boolean.parseBoolean(decode(start, end));
+        }
+        return end - start == 4 && query.regionMatches(true, start, "true", 0, 4);
+    }
+
+    /**
+     * @return the raw query string
+     */
+    @Override
+    public String toString() {
+        return query;
+    }
+
+    /**
+     * Finds a parameter by name, comparing raw names directly unless they are encoded
+     *
+     * @return the index of the first parameter named name from index from, or -1
+     */
+    private int find(String name, int from) {
+        parse();
+        for (int i = from; i < count; i++) {
+            int start = offsets[4 * i];
+            int end = offsets[4 * i + 1];
+            if (needsDecoding(start, end)) {
+                if (decode(start, end).equals(name)) {
+                    return i;
+                }
+            } else if (end - start == name.length() && query.startsWith(name, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String decodedValue(int i) {
+        int start = offsets[4 * i + 2];
+        return start < 0 ? "" : decode(start, offsets[4 * i + 3]);
+    }
+
+    private void parse() {
+        if (offsets != null) {
+            return;
+        }
+        int[] parsed = NO_OFFSETS;
+        int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                if (parsed.length == 4 * count) {
+                    parsed = Arrays.copyOf(parsed, Math.max(16, parsed.length * 2));
+                }
+                // Only within the pair, a search to the end of the query would make parsing quadratic
+                int equals = start;
+                while (equals < end && query.charAt(equals) != '=') {
+                    equals++;
+                }
+                boolean hasValue = equals < end;
+                parsed[4 * count] = start;
+                parsed[4 * count + 1] = hasValue ? equals : end;
+                parsed[4 * count + 2] = hasValue ? equals + 1 : -1;
+                parsed[4 * count + 3] = end;
+                count++;
+            }
+            start = end + 1;
+        }
+        offsets = parsed;
+    }
+
+    private boolean needsDecoding(int start, int end) {
+        return PercentDecoder.isEncoded(query, start, end, true);
+    }
+
+    private String decode(int start, int end) {
+        return PercentDecoder.decodeQuery(query, start, end);
+    }
+
+}
@@ -16,22 +16,47 @@
  */
 package spark;
 
-import org.apache.commons.io.IOUtils;
-import spark.utils.SparkUtils;
+import spark.multipart.MultipartConfig;
+import spark.multipart.MultipartException;
+import spark.multipart.MultipartParser;
+import spark.multipart.MultipartPart;
+import spark.utils.BufferPool;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Provides information about the HTTP request
@@ -44,18 +69,43 @@ public class Request {
 
     private static final String USER_AGENT = "user-agent";
 
+    // The largest buffer allocated up front from the Content-Length sent by the client
+    private static final int MAX_PRESIZE = 64 * 1024;
+
+    // The longest line read by lines() and records(Class), in characters
+    private static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+    private Match match;
     private Map<String, String> params;
     private List<String> splat;
     private QueryParamsMap queryMap;
+    private QueryString query;
 
     private HttpServletRequest servletRequest;
 
     private Session session = null;
 
     /* Lazy loaded stuff */
+    private byte[] bodyBytes = null;
     private String body = null;
+    private boolean bodyStreamed = false;
+
+    // The maximum body size accepted by the matched route, negative if unlimited
+    private long maxBodySize = -1;
+
+    // The reader of the matched route, and the body it decoded last
+    private BodyReader bodyReader = null;
+    private Class<?> decodedType = null;
+    private Object decodedBody = null;
+
+    private List<MultipartPart> parts = null;
 
     private Set<String> headers = null;
+    private Set<String> attributes = null;
+    private Map<String, String> cookies = null;
+
+    // Values memoized for the exchange, indexed by Key.index
+    private Object[] memos = null;
 
     //    request.body              # request body sent by the client (see below), DONE
     //    request.scheme            # "http"                                DONE
@@ -81,57 +131,112 @@ public class Request {
     //    request.referrer          # the referrer of the client or '/'
 
     protected Request() {
-        // Used by wrapper
+        // Used by subclasses
     }
 
     /**
      * Constructor
      *
-     * @param match   the route match
+     * @param match   the route match, may be null until {@link #changeMatch(Match)} is called
      * @param request the servlet request
      */
     Request(Match match, HttpServletRequest request) {
         this.servletRequest = request;
+        this.match = match;
+    }
 
-        List<String> requestList = SparkUtils.convertRouteToList(match.requestUri);
-        List<String> matchedList = SparkUtils.convertRouteToList(match.matchedUri);
-
-        params = getParams(requestList, matchedList);
-        splat = getSplat(requestList, matchedList);
+    /**
+     * Binds the request to another route or filter match. Only params and splat depend on the match, all
+     * other lazily loaded state is kept.
+     *
+     * @param match the match
+     */
+    void changeMatch(Match match) {
+        if (this.match != match) {
+            this.match = match;
+            this.params = null;
+            this.splat = null;
+        }
     }
 
     /**
-     * Returns the map containing all route params
+     * Returns the map containing all route params, percent-decoded as UTF-8
      *
      * @return a map containing all route params
+     * @throws HaltException with status 400 if a param is not properly encoded
      */
     public Map<String, String> params() {
-        return Collections.unmodifiableMap(params);
+        if (params == null) {
+            try {
+                params = match.params();
+            } catch (IllegalArgumentException e) {
+                throw malformedParam(e);
+            }
+        }
+        return params;
     }
 
     /**
-     * Returns the value of the provided route pattern parameter.
+     * Returns the value of the provided route pattern parameter, percent-decoded as UTF-8. Values are decoded
+     * once, when first asked for.
      * Example: parameter 'name' from the following pattern: (get '/hello/:name')
      *
      * @param param the param
      * @return null if the given param is null or not found
+     * @throws HaltException with status 400 if the param is not properly encoded
      */
     public String params(String param) {
         if (param == null) {
             return null;
         }
 
-        if (param.startsWith(":")) {
-            return params.get(param.toLowerCase()); // NOSONAR
-        } else {
-            return params.get(":" + param.toLowerCase()); // NOSONAR
+        try {
+            return match.param(param);
+        } catch (IllegalArgumentException e) {
+            throw malformedParam(e);
+        }
+    }
+
+    /**
+     * Returns the value of the provided route pattern parameter as it was sent, without decoding it
+     *
+     * @param param the param
+     * @return null if the given param is null or not found
+     */
+    public String rawParams(String param) {
+        int slot = param != null ? match.matchedPattern.paramSlot(param) : -1;
+        return slot >= 0 ? match.rawParam(slot) : null;
+    }
+
+    /**
+     * Returns the value of a route pattern parameter by its index in the pattern, avoiding the lookup by name.
+     * Example: index 1 gives the value of 'id' for the following pattern: (get '/users/:group/:id')
+     *
+     * @param index the index of the param among the params of the route pattern
+     * @return null if the requested path doesn't hold the param
+     * @throws HaltException with status 400 if the param is not properly encoded
+     * @throws IndexOutOfBoundsException if the route pattern has no param with that index
+     */
+    public String params(int index) {
+        try {
+            return match.param(index);
+        } catch (IllegalArgumentException e) {
+            throw malformedParam(e);
         }
     }
 
+    private static HaltException malformedParam(IllegalArgumentException e) {
+        LOG.debug("Malformed route param", e);
+        return new HaltException(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
     /**
      * @return an array containing the splat (wildcard) parameters
      */
     public String[] splat() {
+        if (splat == null) {
+            splat = match.splat();
+        }
         return splat.toArray(new String[splat.size()]);
     }
 
@@ -215,17 +320,328 @@ public class Request {
     }
 
     /**
-     * @return the request body sent by the client
+     * @return the request body sent by the client, decoded with the charset of the content type (UTF-8 if
+     * the content type names none)
      */
     public String body() {
         if (body == null) {
+            byte[] bytes = bodyAsBytes();
+            if (bytes != null) {
+                body = new String(bytes, bodyCharset());
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Reads the request body. The body is read once and kept, so filters and the route can all read it.
+     *
+     * @return the request body sent by the client, or null if it couldn't be read
+     * @throws HaltException with status 413 if the body is larger than the route accepts
+     * @throws IllegalStateException if the body has been read as a stream
+     */
+    public byte[] bodyAsBytes() {
+        if (bodyBytes == null) {
+            if (bodyStreamed) {
+                throw new IllegalStateException("The request body has already been read as a stream");
+            }
             try {
-                body = IOUtils.toString(servletRequest.getInputStream());
-            } catch (Exception e) {
+                bodyBytes = readBody();
+            } catch (IOException e) {
                 LOG.warn("Exception when reading body", e);
             }
         }
-        return body;
+        return bodyBytes;
+    }
+
+    /**
+     * @return a read only view of the request body, or null if it couldn't be read
+     * @throws HaltException with status 413 if the body is larger than the route accepts
+     */
+    public ByteBuffer bodyAsByteBuffer() {
+        byte[] bytes = bodyAsBytes();
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Gives the request body as a stream. If the body hasn't been read yet it is streamed from the client
+     * without being kept, and can't be read again with {@link #body()} or {@link #bodyAsBytes()}. Reading
+     * beyond the size the route accepts throws a {@link HaltException} with status 413.
+     *
+     * @return the request body
+     * @throws UncheckedIOException if the body can't be read
+     */
+    public InputStream bodyAsStream() {
+        if (bodyBytes != null) {
+            return new ByteArrayInputStream(bodyBytes);
+        }
+        if (bodyStreamed) {
+            throw new IllegalStateException("The request body has already been read as a stream");
+        }
+        bodyStreamed = true;
+        try {
+            return bodyStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes the request body with the reader of the route, or with the reader registered for the content type
+     * of the request. The body is streamed to the reader unless it has been read already, so it isn't held in
+     * memory twice; it can then no longer be read with {@link #body()} or {@link #bodyAsBytes()}. The decoded
+     * body is kept, asking for the same type again returns the same object.
+     *
+     * @param type the type to read the body as
+     * @param <T>  the type
+     * @return the decoded body
+     * @throws IllegalStateException    if there is no reader for the request, or if the body has already been
+     *                                  streamed
+     * @throws UncheckedIOException     if the body can't be read
+     * @throws IllegalArgumentException if the reader fails with a checked exception, runtime exceptions are
+     *                                  thrown as they are
+     */
+    public <T> T bodyAs(Class<T> type) {
+        if (type.equals(decodedType)) {
+            return type.cast(decodedBody);
+        }
+        BodyReader reader = bodyReader();
+        T decoded;
+        try (InputStream in = bodyAsStream()) {
+            decoded = type.cast(reader.read(in, bodyCharset(), type));
+        } catch (Exception e) {
+            throw readFailure(e, "body");
+        }
+        decodedBody = decoded;
+        decodedType = type;
+        return decoded;
+    }
+
+    /**
+     * Gives the lines of the request body as they arrive, for bodies too large to hold in memory such as
+     * newline delimited batches. Only one line is held at a time and reading blocks until the client has sent
+     * the next one. As with {@link #bodyAsStream()}, a body that hasn't been read yet can't be read again.
+     * The stream should be closed once done with, I/O errors while reading are thrown as
+     * {@link java.io.UncheckedIOException}. Lines are at most 1M characters long, see {@link #lines(int)}.
+     *
+     * @return the lines of the request body, decoded with the charset of the content type (UTF-8 if the
+     * content type names none)
+     * @throws HaltException with status 413 if a line is longer than 1M characters
+     */
+    public Stream<String> lines() {
+        return lines(DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Gives the lines of the request body as they arrive, see {@link #lines()}
+     *
+     * @param maxLineLength the maximum number of characters of a line, without its line terminator
+     * @return the lines of the request body
+     * @throws HaltException with status 413 if a line is longer than the maximum length
+     */
+    public Stream<String> lines(int maxLineLength) {
+        LineIterator lines = new LineIterator(new InputStreamReader(bodyAsStream(), bodyCharset()), maxLineLength);
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(lines, Spliterator.ORDERED
+                                                                                     | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(lines::close);
+    }
+
+    /**
+     * Decodes every non blank line of the request body as a record, with the reader {@link #bodyAs(Class)}
+     * would use. Records are decoded one at a time as they arrive, see {@link #lines()}.
+     *
+     * @param type the type to read the records as
+     * @param <T>  the type
+     * @return the records of the request body
+     * @throws IllegalStateException if there is no reader for the request
+     * @throws HaltException with status 413 if a line is longer than 1M characters
+     */
+    public <T> Stream<T> records(Class<T> type) {
+        return records(type, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Decodes every non blank line of the request body as a record, see {@link #records(Class)}
+     *
+     * @param type          the type to read the records as
+     * @param maxLineLength the maximum number of characters of a line, without its line terminator
+     * @param <T>           the type
+     * @return the records of the request body
+     * @throws IllegalStateException if there is no reader for the request
+     * @throws HaltException with status 413 if a line is longer than the maximum length
+     */
+    public <T> Stream<T> records(Class<T> type, int maxLineLength) {
+        BodyReader reader = bodyReader();
+        Charset charset = bodyCharset();
+        return lines(maxLineLength).filter(line -> !line.trim().isEmpty()).map(line -> {
+            try {
+                return type.cast(reader.read(new ByteArrayInputStream(line.getBytes(charset)), charset, type));
+            } catch (Exception e) {
+                throw readFailure(e, "record " + line);
+            }
+        });
+    }
+
+    /**
+     * Parses a multipart/form-data body as it is read from the client. Small parts are kept in memory, parts
+     * larger than the spool threshold are written to temporary files that are deleted once the request has been
+     * handled, see {@link SparkBase#multipartConfig(MultipartConfig)}. Parts or bodies larger than the
+     * configured limits are answered with 413 (Request Entity Too Large), malformed bodies with 400.
+     *
+     * @return the parts of the body, empty if the request is not multipart
+     * @throws UncheckedIOException if the body can't be read or a part can't be spooled
+     */
+    public List<MultipartPart> parts() {
+        if (parts == null) {
+            String boundary = MultipartParser.boundary(contentType());
+            if (boundary == null) {
+                parts = Collections.emptyList();
+            } else {
+                try {
+                    MultipartParser parser = new MultipartParser(bodyAsStream(), boundary, bodyCharset(),
+                                                                 SparkBase.multipartConfig);
+                    parts = Collections.unmodifiableList(parser.parse());
+                } catch (MultipartException e) {
+                    throw new HaltException(e.getStatusCode(), e.getMessage());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * @param name the name of the form field
+     * @return the first part of a multipart/form-data body with the given name, or null if there is none
+     * @throws UncheckedIOException if the body can't be read or a part can't be spooled
+     */
+    public MultipartPart part(String name) {
+        for (MultipartPart part : parts()) {
+            if (name.equals(part.name())) {
+                return part;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the files the parts of the body have been spooled to
+     */
+    void deleteParts() {
+        if (parts != null) {
+            for (MultipartPart part : parts) {
+                try {
+                    part.delete();
+                } catch (IOException e) {
+                    LOG.warn("Could not delete spooled part " + part.path(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets runtime exceptions of body readers through, so they can be mapped to responses
+     */
+    private static RuntimeException readFailure(Exception e, String what) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof IOException) {
+            return new UncheckedIOException((IOException) e);
+        }
+        return new IllegalArgumentException("Could not read " + what, e);
+    }
+
+    private BodyReader bodyReader() {
+        BodyReader reader = bodyReader != null ? bodyReader : BodyReaderMapper.getInstance().getReader(contentType());
+        if (reader == null) {
+            throw new IllegalStateException("No body reader for content type " + contentType());
+        }
+        return reader;
+    }
+
+    /**
+     * Sets the reader of the matched route, see {@link #bodyAs(Class)}
+     */
+    void bodyReader(BodyReader bodyReader) {
+        this.bodyReader = bodyReader;
+    }
+
+    /**
+     * Sets the maximum body size accepted by the matched route. Fails right away if the client announced a
+     * larger body.
+     *
+     * @param maxBodySize the maximum size in bytes, negative for no limit
+     */
+    void maxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        if (maxBodySize >= 0 && servletRequest.getContentLength() > maxBodySize) {
+            throw new HaltException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        }
+    }
+
+    private InputStream bodyStream() throws IOException {
+        InputStream in = servletRequest.getInputStream();
+        return maxBodySize >= 0 ? new LimitedInputStream(in, maxBodySize) : in;
+    }
+
+    private byte[] readBody() throws IOException {
+        InputStream in = bodyStream();
+        int contentLength = servletRequest.getContentLength();
+
+        if (contentLength >= 0) {
+            // Read straight into a buffer of the announced size. The size comes from the client, so a large
+            // body starts at a bounded buffer and only grows as the bytes actually arrive
+            byte[] bytes = new byte[Math.min(contentLength, MAX_PRESIZE)];
+            int size = read(in, bytes, 0);
+            while (size == bytes.length && size < contentLength) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(contentLength, bytes.length * 2L));
+                size = read(in, bytes, size);
+            }
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+
+        // Unknown size, small bodies fit in a pooled buffer and are copied out at their exact size
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int size = read(in, buffer, 0);
+            if (size < buffer.length) {
+                return Arrays.copyOf(buffer, size);
+            }
+            byte[] bytes = Arrays.copyOf(buffer, buffer.length * 2);
+            while ((size = read(in, bytes, size)) == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            return Arrays.copyOf(bytes, size);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends
+     *
+     * @return the number of bytes in the buffer
+     */
+    private static int read(InputStream in, byte[] buffer, int offset) throws IOException {
+        int count;
+        while (offset < buffer.length && (count = in.read(buffer, offset, buffer.length - offset)) >= 0) {
+            offset += count;
+        }
+        return offset;
+    }
+
+    private Charset bodyCharset() {
+        String encoding = servletRequest.getCharacterEncoding();
+        if (encoding != null) {
+            try {
+                return Charset.forName(encoding);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                LOG.debug("Unsupported request charset {}, decoding the body as UTF-8", encoding);
+            }
+        }
+        return StandardCharsets.UTF_8;
     }
 
     /**
@@ -246,6 +662,62 @@ public class Request {
         return servletRequest.getParameter(queryParam);
     }
 
+    /**
+     * @return a view of the query string alone, which unlike {@link #queryParams(String)} doesn't include form
+     * parameters sent in the body, and doesn't make the container parse the body to find them
+     */
+    public QueryString query() {
+        if (query == null) {
+            query = new QueryString(servletRequest.getQueryString());
+        }
+        return query;
+    }
+
+    /**
+     * Gets a parameter of the query string, see {@link #query()}
+     *
+     * @param queryParam the query parameter
+     * @return the decoded value of the parameter, or null if it is not present
+     */
+    public String query(String queryParam) {
+        return query().value(queryParam);
+    }
+
+    /**
+     * Reads an int parameter of the query string, such as limit in /books?limit=50
+     *
+     * @param queryParam   the query parameter
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int queryInt(String queryParam, int defaultValue) {
+        return query().intValue(queryParam, defaultValue);
+    }
+
+    /**
+     * Reads a long parameter of the query string
+     *
+     * @param queryParam   the query parameter
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long queryLong(String queryParam, long defaultValue) {
+        return query().longValue(queryParam, defaultValue);
+    }
+
+    /**
+     * Reads a boolean parameter of the query string, values other than "true" (ignoring case) are false
+     *
+     * @param queryParam   the query parameter
+     * @param defaultValue the value if the parameter is not present or empty
+     * @return the value of the parameter
+     */
+    public boolean queryBoolean(String queryParam, boolean defaultValue) {
+        return query().booleanValue(queryParam, defaultValue);
+    }
+
     /**
      * Gets the value for the provided header
      *
@@ -264,15 +736,17 @@ public class Request {
     }
 
     /**
-     * @return all headers
+     * @return the names of all headers, sorted and compared ignoring case as header names are. The set is read
+     * once and can't be modified.
      */
     public Set<String> headers() {
         if (headers == null) {
-            headers = new TreeSet<>();
+            Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
             Enumeration<String> enumeration = servletRequest.getHeaderNames();
             while (enumeration.hasMoreElements()) {
-                headers.add(enumeration.nextElement());
+                names.add(enumeration.nextElement());
             }
+            headers = Collections.unmodifiableSet(names);
         }
         return headers;
     }
@@ -284,6 +758,52 @@ public class Request {
         return servletRequest.getQueryString();
     }
 
+    /**
+     * Gets the value of a key for this exchange, computing it the first time it is asked for. Filters and the
+     * route share the value, so work such as resolving the authenticated user is done once per request:
+     * <pre>
+     * static final Request.Key&lt;User&gt; USER = Request.Key.create("user");
+     *
+     * before((request, response) -&gt; request.memo(USER, () -&gt; users.find(request.cookie("session"))));
+     * get("/profile", (request, response) -&gt; request.memo(USER, () -&gt; users.find(request.cookie("session"))));
+     * </pre>
+     *
+     * @param key      the key
+     * @param supplier computes the value, it is called at most once per exchange, even if it returns null
+     * @param <T>      the type of the value
+     * @return the value
+     */
+    public <T> T memo(Key<T> key, Supplier<T> supplier) {
+        Object value = memoSlot(key.index);
+        if (value == null) {
+            T computed = supplier.get();
+            memos[key.index] = computed != null ? computed : Key.NULL;
+            return computed;
+        }
+        return value == Key.NULL ? null : key.type(value);
+    }
+
+    /**
+     * @param key the key
+     * @param <T> the type of the value
+     * @return the value of the key for this exchange, or null if it hasn't been set or computed yet
+     */
+    public <T> T memo(Key<T> key) {
+        Object value = memoSlot(key.index);
+        return value == null || value == Key.NULL ? null : key.type(value);
+    }
+
+    private Object memoSlot(int index) {
+        if (memos == null || memos.length <= index) {
+            Object[] grown = new Object[Math.max(Key.count(), index + 1)];
+            if (memos != null) {
+                System.arraycopy(memos, 0, grown, 0, memos.length);
+            }
+            memos = grown;
+        }
+        return memos[index];
+    }
+
     /**
      * Sets an attribute on the request (can be fetched in filters/routes later in the chain)
      *
@@ -306,15 +826,13 @@ public class Request {
 
 
     /**
-     * @return all attributes
+     * @return the names of all attributes, as a read only view that reflects attributes set later on
      */
     public Set<String> attributes() {
-        Set<String> attrList = new HashSet<>();
-        Enumeration<String> attributes = servletRequest.getAttributeNames();
-        while (attributes.hasMoreElements()) {
-            attrList.add(attributes.nextElement());
+        if (attributes == null) {
+            attributes = new AttributeNames();
         }
-        return attrList;
+        return attributes;
     }
 
     /**
@@ -380,17 +898,24 @@ public class Request {
     }
 
     /**
-     * @return request cookies (or empty Map if cookies dosn't present)
+     * @return request cookies by name (or empty Map if cookies dosn't present). The cookies are read once, the
+     * map can't be modified.
      */
     public Map<String, String> cookies() {
-        Map<String, String> result = new HashMap<>();
-        Cookie[] cookies = servletRequest.getCookies();
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                result.put(cookie.getName(), cookie.getValue());
+        if (cookies == null) {
+            Cookie[] servletCookies = servletRequest.getCookies();
+            if (servletCookies == null || servletCookies.length == 0) {
+                cookies = Collections.emptyMap();
+            } else {
+                Map<String, String> result = new HashMap<>();
+                for (Cookie cookie : servletCookies) {
+                    // Browsers send the most specific cookie of a name first
+                    result.putIfAbsent(cookie.getName(), cookie.getValue());
+                }
+                cookies = Collections.unmodifiableMap(result);
             }
         }
-        return result;
+        return cookies;
     }
 
     /**
@@ -400,15 +925,7 @@ public class Request {
      * @return cookie value or null if the cookie was not found
      */
     public String cookie(String name) {
-        Cookie[] cookies = servletRequest.getCookies();
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                if (cookie.getName().equals(name)) {
-                    return cookie.getValue();
-                }
-            }
-        }
-        return null;
+        return cookies().get(name);
     }
 
     /**
@@ -425,50 +942,218 @@ public class Request {
         return servletRequest.getProtocol();
     }
 
-    private static Map<String, String> getParams(List<String> request, List<String> matched) {
-        LOG.debug("get params");
+    /**
+     * A key of a value memoized per exchange, see {@link Request#memo(Key, Supplier)}. Each key takes a slot in
+     * every request that uses memoization, so keys are meant to be created once, as constants.
+     *
+     * @param <T> the type of the value
+     */
+    public static final class Key<T> {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
 
-        Map<String, String> params = new HashMap<>();
+        // Stands for a memoized null
+        private static final Object NULL = new Object();
 
-        for (int i = 0; (i < request.size()) && (i < matched.size()); i++) {
-            String matchedPart = matched.get(i);
-            if (SparkUtils.isParam(matchedPart)) {
-                LOG.debug("matchedPart: "
-                                  + matchedPart
-                                  + " = "
-                                  + request.get(i));
-                params.put(matchedPart.toLowerCase(), request.get(i));
-            }
+        private final int index;
+        private final String name;
+
+        private Key(String name) {
+            this.index = COUNT.getAndIncrement();
+            this.name = name;
+        }
+
+        /**
+         * Creates a key
+         *
+         * @param name the name of the key, used in messages only
+         * @param <T>  the type of the value
+         * @return the key
+         */
+        public static <T> Key<T> create(String name) {
+            return new Key<>(name);
+        }
+
+        static int count() {
+            return COUNT.get();
+        }
+
+        @SuppressWarnings("unchecked")
+        private T type(Object value) {
+            return (T) value;
+        }
+
+        @Override
+        public String toString() {
+            return name;
         }
-        return Collections.unmodifiableMap(params);
+
     }
 
-    private static List<String> getSplat(List<String> request, List<String> matched) {
-        LOG.debug("get splat");
+    /**
+     * The attribute names of the servlet request, read through on every use
+     */
+    private final class AttributeNames extends AbstractSet<String> {
+
+        @Override
+        public Iterator<String> iterator() {
+            Enumeration<String> names = servletRequest.getAttributeNames();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return names.hasMoreElements();
+                }
 
-        int nbrOfRequestParts = request.size();
-        int nbrOfMatchedParts = matched.size();
+                @Override
+                public String next() {
+                    return names.nextElement();
+                }
+            };
+        }
 
-        boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
+        @Override
+        public boolean contains(Object name) {
+            return name instanceof String && servletRequest.getAttribute((String) name) != null;
+        }
 
-        List<String> splat = new ArrayList<>();
+        @Override
+        public int size() {
+            int size = 0;
+            for (Enumeration<String> names = servletRequest.getAttributeNames(); names.hasMoreElements(); names.nextElement()) {
+                size++;
+            }
+            return size;
+        }
 
-        for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
-            String matchedPart = matched.get(i);
+    }
 
-            if (SparkUtils.isSplat(matchedPart)) {
+    /**
+     * Reads lines terminated by \n, \r or \r\n like {@link BufferedReader#readLine()}, but stops at a line that
+     * is longer than the maximum instead of holding all of it
+     */
+    private static final class LineIterator implements Iterator<String> {
+        private final Reader reader;
+        private final int maxLineLength;
+        private final char[] buffer = new char[BufferPool.BUFFER_SIZE];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean skipLineFeed;
+        private boolean ended;
+        private String next;
+
+        private LineIterator(Reader reader, int maxLineLength) {
+            this.reader = reader;
+            this.maxLineLength = maxLineLength;
+        }
 
-                StringBuilder splatParam = new StringBuilder(request.get(i));
-                if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
-                    for (int j = i + 1; j < nbrOfRequestParts; j++) {
-                        splatParam.append("/");
-                        splatParam.append(request.get(j));
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                try {
+                    next = readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String current = next;
+            next = null;
+            return current;
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        ended = true;
+                        return line.length() > 0 ? line.toString() : null;
+                    }
+                }
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (buffer[position] == '\n') {
+                        position++;
+                        continue;
                     }
                 }
-                splat.add(splatParam.toString());
+                int start = position;
+                while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+                    position++;
+                }
+                if (line.length() + position - start > maxLineLength) {
+                    throw new HaltException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                }
+                line.append(buffer, start, position - start);
+                if (position < limit) {
+                    skipLineFeed = buffer[position++] == '\r';
+                    return line.toString();
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stops reading a body that turns out to be larger than the route accepts
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                consumed(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed(skipped);
+            return skipped;
+        }
+
+        private void consumed(long count) {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new HaltException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
             }
         }
-        return Collections.unmodifiableList(splat);
     }
 
 }
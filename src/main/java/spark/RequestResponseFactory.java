@@ -19,6 +19,9 @@ package spark;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
+
 public final class RequestResponseFactory {
 
     private RequestResponseFactory() {
@@ -28,6 +31,109 @@ public final class RequestResponseFactory {
         return new Request(match, request);
     }
 
+    /**
+     * Creates a request that is not bound to a match yet, see {@link #changeMatch(Request, Match)}
+     *
+     * @param request the servlet request
+     * @return the request
+     */
+    public static Request create(HttpServletRequest request) {
+        return new Request(null, request);
+    }
+
+    /**
+     * Binds the request to the route or filter about to handle it, so that params and splat are read from
+     * that match. Everything else the request has read or parsed is kept.
+     *
+     * @param request the request
+     * @param match   the match
+     */
+    public static void changeMatch(Request request, Match match) {
+        request.changeMatch(match);
+    }
+
+    /**
+     * Limits the size of the request body to what the matched route accepts
+     *
+     * @param request     the request
+     * @param maxBodySize the maximum size in bytes, negative for no limit
+     * @throws HaltException with status 413 if the request announces a larger body
+     */
+    public static void maxBodySize(Request request, long maxBodySize) {
+        request.maxBodySize(maxBodySize);
+    }
+
+    /**
+     * Sets the reader the matched route decodes request bodies with
+     *
+     * @param request    the request
+     * @param bodyReader the reader, null to choose it by the content type of the request
+     */
+    public static void bodyReader(Request request, BodyReader bodyReader) {
+        request.bodyReader(bodyReader);
+    }
+
+    /**
+     * Releases what the request holds beyond the exchange, such as spooled multipart parts
+     *
+     * @param request the request
+     */
+    public static void release(Request request) {
+        request.deleteParts();
+    }
+
+    /**
+     * @param response the response
+     * @return true if a redirect has been triggered on the response
+     */
+    public static boolean isRedirected(Response response) {
+        return response.isRedirected();
+    }
+
+    /**
+     * @param response the response
+     * @return the file set with {@link Response#file(Path)}, if any
+     */
+    public static Path file(Response response) {
+        return response.file();
+    }
+
+    /**
+     * @param response the response
+     * @return true if the body of the response is streamed
+     */
+    public static boolean isStreamed(Response response) {
+        return response.isStreamed();
+    }
+
+    /**
+     * Sets the stream the body of a response is streamed through instead of the servlet output stream
+     *
+     * @param response   the response
+     * @param bodyStream the stream
+     */
+    public static void bodyStream(Response response, OutputStream bodyStream) {
+        response.bodyStream(bodyStream);
+    }
+
+    /**
+     * Ends a streamed body
+     *
+     * @param response the response
+     */
+    public static void finishStream(Response response) {
+        response.finishStream();
+    }
+
+    /**
+     * Discards a streamed body that hasn't been committed yet, so that a halt or error body can replace it
+     *
+     * @param response the response
+     */
+    public static void resetStream(Response response) {
+        response.resetStream();
+    }
+
     public static Response create(HttpServletResponse response) {
         return new Response(response);
     }
@@ -23,6 +23,12 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 /**
  * Provides functionality for modifying the response
@@ -38,9 +44,14 @@ public class Response {
 
     private HttpServletResponse response;
     private String body;
+    private Path file;
+    private OutputStream bodyStream;
+    private OutputStream outputStream;
+    private PrintWriter writer;
+    private boolean redirected = false;
 
     protected Response() {
-        // Used by wrapper
+        // Used by subclasses
     }
 
     Response(HttpServletResponse response) {
@@ -84,6 +95,119 @@ public class Response {
         return this.body;
     }
 
+    /**
+     * Sends a file as the response body. The file is handed to Jetty as a channel rather than read into memory,
+     * and Content-Type (from the file extension), Content-Length and Last-Modified are set when it is written,
+     * unless already set. It is sent if the route returns null or the file itself, a body set later replaces it.
+     *
+     * @param file the file
+     * @return the file, so that a route can return it
+     */
+    public Path file(Path file) {
+        this.file = file;
+        return file;
+    }
+
+    /**
+     * @return the file to send, if any
+     */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Streams the body instead of returning it from the route. The output goes through the container's buffer,
+     * which is sent once it fills up or on {@link #flush()}, so large bodies never have to be held in memory.
+     * Once streaming has started the route result and any body set by after filters are ignored. After filters
+     * still run, the headers and status they set only take effect if the response hasn't been committed yet. If
+     * the route halts or fails before the response is committed the streamed output is discarded and the halt or
+     * error body is sent instead, afterwards the response is just ended.
+     *
+     * @return the output stream of the response
+     */
+    public OutputStream outputStream() {
+        if (outputStream == null) {
+            try {
+                outputStream = bodyStream != null ? bodyStream : response.getOutputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return outputStream;
+    }
+
+    /**
+     * Streams a text body, see {@link #outputStream()}. The content type defaults to text/html and the charset to
+     * UTF-8. Written text is buffered by the writer until {@link #flush()} is called or the route returns. Like
+     * the servlet writer it doesn't throw, write errors such as a client going away are reported by
+     * {@link PrintWriter#checkError()}.
+     *
+     * @return a writer encoding to the output stream of the response
+     */
+    public PrintWriter writer() {
+        if (writer == null) {
+            if (response.getContentType() == null) {
+                response.setContentType("text/html; charset=utf-8");
+            } else if (!response.getContentType().contains("charset")) {
+                response.setCharacterEncoding("utf-8");
+            }
+            writer = new PrintWriter(
+                    new OutputStreamWriter(outputStream(), Charset.forName(response.getCharacterEncoding())));
+        }
+        return writer;
+    }
+
+    /**
+     * Sends what has been streamed so far to the client, committing the status and headers, so that it can start
+     * rendering early
+     */
+    public void flush() {
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+            outputStream().flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sets the stream the body is streamed through instead of the servlet output stream, e.g. to compress it
+     *
+     * @param bodyStream the stream
+     */
+    void bodyStream(OutputStream bodyStream) {
+        this.bodyStream = bodyStream;
+    }
+
+    /**
+     * @return true if the body is streamed through {@link #outputStream()} or {@link #writer()}
+     */
+    boolean isStreamed() {
+        return outputStream != null;
+    }
+
+    /**
+     * Flushes text still held by the writer to the output stream, the container sends the rest
+     */
+    void finishStream() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Discards the output streamed so far, unless the response has already been committed
+     */
+    void resetStream() {
+        if (outputStream != null && !response.isCommitted()) {
+            response.resetBuffer();
+            outputStream = null;
+            writer = null;
+        }
+    }
+
     /**
      * @return the raw response object handed in by Jetty
      */
@@ -100,6 +224,7 @@ public class Response {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Redirecting ({} {} to {}", "Found", HttpServletResponse.SC_FOUND, location);
         }
+        redirected = true;
         try {
             response.sendRedirect(location);
         } catch (IOException ioException) {
@@ -117,6 +242,7 @@ public class Response {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Redirecting ({} to {}", httpStatusCode, location);
         }
+        redirected = true;
         response.setStatus(httpStatusCode);
         response.setHeader("Location", location);
         response.setHeader("Connection", "close");
@@ -127,6 +253,13 @@ public class Response {
         }
     }
 
+    /**
+     * @return true if a redirect has been triggered
+     */
+    boolean isRedirected() {
+        return redirected;
+    }
+
     /**
      * Adds/Sets a response header
      *
@@ -10,7 +10,8 @@ public interface Route {
      *
      * @param request  The request object providing information about the HTTP request
      * @param response The response object providing functionality for modifying the response
-     * @return The content to be set in the response
+     * @return The content to be set in the response, rendered unless it is a byte[], ByteBuffer, InputStream,
+     * Path or Consumer&lt;OutputStream&gt;
      */
     Object handle(Request request, Response response);
 
@@ -16,17 +16,23 @@
  */
 package spark;
 
+import spark.compression.CompressionConfig;
 
 /**
  * A Route is built up by a path (for url-matching) and the implementation of the 'handle' method.
  * When a request is made, if present, the matching routes 'handle' method is invoked. The object
- * that is returned from 'handle' will be set to the response body (toString()).
+ * that is returned from 'handle' will be set to the response body (toString()). A byte[], ByteBuffer,
+ * InputStream, Path or Consumer&lt;OutputStream&gt; is written to the response as it is instead.
  *
  * @author Per Wendel
  */
 public abstract class RouteImpl {
     private String path;
     private String acceptType;
+    private long maxBodySize = -1;
+    private int responseBufferSize = -1;
+    private volatile CompressionConfig compression;
+    private BodyReader bodyReader;
 
     /**
      * Constructor
@@ -44,7 +50,8 @@ public abstract class RouteImpl {
      *
      * @param request  The request object providing information about the HTTP request
      * @param response The response object providing functionality for modifying the response
-     * @return The content to be set in the response
+     * @return The content to be set in the response, rendered unless it is a byte[], ByteBuffer, InputStream,
+     * Path or Consumer&lt;OutputStream&gt;
      * @throws java.lang.Exception when handle fails
      */
     public abstract Object handle(Request request, Response response) throws Exception;
@@ -73,6 +80,77 @@ public abstract class RouteImpl {
         return acceptType;
     }
 
+    /**
+     * @return the maximum size in bytes of request bodies accepted by this route, negative if unlimited
+     */
+    public long maxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Sets the maximum size of request bodies accepted by this route. Requests announcing a larger body, or
+     * sending one, are answered with 413 (Request Entity Too Large).
+     *
+     * @param maxBodySize the maximum size in bytes, negative for no limit
+     */
+    public void maxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * @return the size in bytes of the response buffer of this route, negative for the container default
+     */
+    public int responseBufferSize() {
+        return responseBufferSize;
+    }
+
+    /**
+     * Sets the size of the response buffer of this route. Streamed bodies are sent to the client each time the
+     * buffer fills up.
+     *
+     * @param responseBufferSize the size in bytes, negative for the container default
+     */
+    public void responseBufferSize(int responseBufferSize) {
+        this.responseBufferSize = responseBufferSize;
+    }
+
+    /**
+     * @return how the response bodies of this route are compressed, null or {@link CompressionConfig#NONE} if
+     * they aren't
+     */
+    public CompressionConfig compression() {
+        return compression;
+    }
+
+    /**
+     * Sets how the response bodies of this route are compressed
+     *
+     * @param compression the compression config, {@link CompressionConfig#NONE} for no compression, or null to
+     *                    use the global config when the route is mapped. The config is copied, changing it
+     *                    afterwards has no effect.
+     */
+    public void compression(CompressionConfig compression) {
+        this.compression = compression != null ? compression.copy() : null;
+    }
+
+    /**
+     * @return the reader decoding request bodies for {@link Request#bodyAs(Class)}, null if the reader is chosen
+     * by the content type of the request
+     */
+    public BodyReader bodyReader() {
+        return bodyReader;
+    }
+
+    /**
+     * Sets the reader decoding request bodies for this route, it takes precedence over the readers registered
+     * per content type.
+     *
+     * @param bodyReader the reader, null to choose it by the content type of the request
+     */
+    public void bodyReader(BodyReader bodyReader) {
+        this.bodyReader = bodyReader;
+    }
+
     /**
      * @return the path
      */
@@ -837,6 +837,64 @@ public final class Spark extends SparkBase {
     // END Response Transforming Routes
     //////////////////////////////////////////////////
 
+    //////////////////////////////////////////////////
+    // BEGIN Body Reading Routes
+    //////////////////////////////////////////////////
+
+    /**
+     * Registers the reader decoding request bodies of the given content type for {@link Request#bodyAs(Class)}.
+     * The content type can be a media type (application/json), a range (text/*) or any type (*&#47;*).
+     *
+     * @param contentType the content type
+     * @param reader      the body reader
+     */
+    public static synchronized void bodyReader(String contentType, BodyReader reader) {
+        BodyReaderMapper.getInstance().map(contentType, reader);
+    }
+
+    /**
+     * Map the route for HTTP POST requests, decoding request bodies with the given reader
+     *
+     * @param path   the path
+     * @param reader the body reader
+     * @param route  The route
+     */
+    public static synchronized void post(String path, BodyReader reader, Route route) {
+        RouteImpl routeImpl = wrap(path, route);
+        routeImpl.bodyReader(reader);
+        addRoute(HttpMethod.post, routeImpl);
+    }
+
+    /**
+     * Map the route for HTTP PUT requests, decoding request bodies with the given reader
+     *
+     * @param path   the path
+     * @param reader the body reader
+     * @param route  The route
+     */
+    public static synchronized void put(String path, BodyReader reader, Route route) {
+        RouteImpl routeImpl = wrap(path, route);
+        routeImpl.bodyReader(reader);
+        addRoute(HttpMethod.put, routeImpl);
+    }
+
+    /**
+     * Map the route for HTTP PATCH requests, decoding request bodies with the given reader
+     *
+     * @param path   the path
+     * @param reader the body reader
+     * @param route  The route
+     */
+    public static synchronized void patch(String path, BodyReader reader, Route route) {
+        RouteImpl routeImpl = wrap(path, route);
+        routeImpl.bodyReader(reader);
+        addRoute(HttpMethod.patch, routeImpl);
+    }
+
+    //////////////////////////////////////////////////
+    // END Body Reading Routes
+    //////////////////////////////////////////////////
+
     //////////////////////////////////////////////////
     // EXCEPTION mapper
     //////////////////////////////////////////////////
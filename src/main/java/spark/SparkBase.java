@@ -1,7 +1,9 @@
 package spark;
 
+import spark.compression.CompressionConfig;
 import spark.interceptor.InterceptorRegistration;
 import spark.interceptor.InterceptorRegistry;
+import spark.multipart.MultipartConfig;
 import spark.route.HttpMethod;
 import spark.route.RouteEntry;
 import spark.route.RouteRegistry;
@@ -10,7 +12,9 @@ import spark.servlet.SparkFilter;
 import spark.webserver.SparkServer;
 import spark.webserver.SparkServerFactory;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -25,6 +29,12 @@ public abstract class SparkBase {
     protected static int port = SPARK_DEFAULT_PORT;
     protected static String ipAddress = "0.0.0.0";
 
+    protected static long maxBodySize = -1;
+    protected static int responseBufferSize = -1;
+    protected static CompressionConfig compression;
+    // Read by request threads, see Request#parts()
+    protected static volatile MultipartConfig multipartConfig = new MultipartConfig();
+
     protected static String keystoreFile;
     protected static String keystorePassword;
     protected static String truststoreFile;
@@ -40,6 +50,10 @@ public abstract class SparkBase {
 
     private static boolean runFromServlet;
 
+    // Collects the routes and filters mapped while reloading, null otherwise
+    private static List<RouteEntry> reloadedRoutes;
+    private static List<InterceptorRegistration> reloadedInterceptors;
+
     /**
      * Set the IP address that Spark should listen on. If not called the default
      * address is '0.0.0.0'. This has to be called before any route mapping is
@@ -199,6 +213,126 @@ public abstract class SparkBase {
         }
     }
 
+    /**
+     * Sets the maximum size of request bodies accepted by the routes mapped after this call, so different
+     * routes can accept different sizes. Requests announcing a larger body, or sending one, are answered
+     * with 413 (Request Entity Too Large). Requests matching no route aren't limited.
+     * Example:
+     * <pre>
+     * maxBodySize(10 * 1024 * 1024);
+     * post("/upload", (request, response) -&gt; store(request.bodyAsStream()));
+     * maxBodySize(64 * 1024);
+     * post("/comments", (request, response) -&gt; addComment(request.body()));
+     * </pre>
+     *
+     * @param maxBodySize the maximum size in bytes, negative for no limit (the default)
+     */
+    public static synchronized void maxBodySize(long maxBodySize) {
+        Spark.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Sets the size of the response buffer of the routes mapped after this call. Streamed bodies are sent to the
+     * client each time the buffer fills up, so a smaller buffer gets the first bytes out sooner and a larger one
+     * lets more of the body, and the headers, be changed before the response is committed.
+     * Example:
+     * <pre>
+     * responseBufferSize(4 * 1024);
+     * get("/report.csv", (request, response) -&gt; writeReport(response.writer()));
+     * </pre>
+     *
+     * @param responseBufferSize the size in bytes, negative for the container default (the default)
+     */
+    public static synchronized void responseBufferSize(int responseBufferSize) {
+        Spark.responseBufferSize = responseBufferSize;
+    }
+
+    /**
+     * Compresses the response bodies of the routes mapped after this call with gzip or deflate, as negotiated
+     * from the Accept-Encoding header, so routes can be opted out by mapping them after compression(null).
+     * Rendered, streamed and binary bodies are compressed, files are sent as they are. The config is
+     * copied, changing it afterwards has no effect. A route given {@link CompressionConfig#NONE} through
+     * {@link RouteImpl#compression(CompressionConfig)} is never compressed, whatever the global config.
+     * Example:
+     * <pre>
+     * compression(new CompressionConfig().minSize(512));
+     * get("/orders", (request, response) -&gt; orders(), json);
+     * compression(null);
+     * get("/ticker", (request, response) -&gt; streamTicks(response.writer()));
+     * </pre>
+     *
+     * @param compression the compression config, null for no compression (the default)
+     */
+    public static synchronized void compression(CompressionConfig compression) {
+        Spark.compression = compression != null ? compression.copy() : null;
+    }
+
+    /**
+     * Configures how {@link Request#parts()} parses multipart/form-data bodies: the size above which parts are
+     * spooled to disk, the directory they are spooled to, and the size limits of parts and whole bodies.
+     * The config is copied, changing it afterwards has no effect.
+     *
+     * @param multipartConfig the configuration, null for the defaults
+     */
+    public static synchronized void multipartConfig(MultipartConfig multipartConfig) {
+        Spark.multipartConfig = multipartConfig != null ? multipartConfig.copy() : new MultipartConfig();
+    }
+
+    /**
+     * Enables a cache of route lookups, keyed by http method, request uri and accept header. Lookups of
+     * unmapped uris are cached too, so repeated 404s don't scan the routes again. The cache is emptied
+     * when routes are added or cleared.
+     *
+     * @param maximumSize the maximum number of cached lookups
+     */
+    public static synchronized void routeMatchCache(long maximumSize) {
+        RouteRegistryFactory.get().enableMatchCache(maximumSize);
+    }
+
+    /**
+     * Sets the maximum number of cached accept type negotiations, per Accept header and set of candidate
+     * routes or interceptors. 0 disables the cache. The default size is
+     * {@link spark.utils.NegotiationCache#DEFAULT_MAXIMUM_SIZE}.
+     *
+     * @param maximumSize the maximum number of cached negotiations
+     */
+    public static synchronized void negotiationCache(long maximumSize) {
+        RouteRegistryFactory.get().negotiationCache().maximumSize(maximumSize);
+        InterceptorRegistry.get().negotiationCache().maximumSize(maximumSize);
+    }
+
+    /**
+     * Replaces all routes and filters by the ones mapped by the given code, without restarting the server.
+     * The new routes are collected first and then swapped in at once, requests handled meanwhile are still
+     * served by the old routes. Routes and filters are swapped one after the other, so a request may run
+     * old filters before a new route or new filters before an old route.
+     * Example:
+     * <pre>
+     * reloadRoutes(() -&gt; {
+     *     get("/hello", (request, response) -&gt; "Hello again");
+     *     before("/admin/*", (request, response) -&gt; authenticate(request));
+     * });
+     * </pre>
+     *
+     * @param routes maps the new routes and filters, e.g. with get(...) and before(...)
+     */
+    public static void reloadRoutes(Runnable routes) {
+        // The lock of the mapping methods, e.g. get(...), which routes.run() calls while it is held
+        synchronized (Spark.class) {
+            init();
+            reloadedRoutes = new ArrayList<>();
+            reloadedInterceptors = new ArrayList<>();
+            try {
+                routes.run();
+                routeRegistry.replaceRoutes(reloadedRoutes);
+                interceptorRegistry.replaceInterceptors(reloadedInterceptors);
+            } finally {
+                reloadedRoutes = null;
+                reloadedInterceptors = null;
+            }
+        }
+    }
+
     private static void throwBeforeRouteMappingException() {
         throw new IllegalStateException(
                 "This must be done before route mapping has begun");
@@ -260,14 +394,44 @@ public abstract class SparkBase {
         };
     }
 
+    /**
+     * Maps a route, called by the mapping methods of {@link Spark} while they hold its lock
+     *
+     * @param httpMethod the http method
+     * @param route      the route
+     */
     protected static void addRoute(HttpMethod httpMethod, RouteImpl route) {
         init();
-        routeRegistry.addRoute(new RouteEntry(httpMethod, route.getPath(), route.getAcceptType(), route));
+        if (route.maxBodySize() < 0) {
+            route.maxBodySize(maxBodySize);
+        }
+        if (route.responseBufferSize() < 0) {
+            route.responseBufferSize(responseBufferSize);
+        }
+        if (route.compression() == null) {
+            route.compression(compression);
+        }
+        RouteEntry entry = new RouteEntry(httpMethod, route.getPath(), route.getAcceptType(), route);
+        if (reloadedRoutes != null) {
+            reloadedRoutes.add(entry);
+        } else {
+            routeRegistry.addRoute(entry);
+        }
     }
 
+    /**
+     * Adds a filter, called by the mapping methods of {@link Spark} while they hold its lock
+     *
+     * @param registration the filter
+     * @return the registration
+     */
     protected static InterceptorRegistration addInterceptor(InterceptorRegistration registration) {
         init();
-        interceptorRegistry.addInterceptor(registration);
+        if (reloadedInterceptors != null) {
+            reloadedInterceptors.add(registration);
+        } else {
+            interceptorRegistry.addInterceptor(registration);
+        }
         return registration;
     }
 
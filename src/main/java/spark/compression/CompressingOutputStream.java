@@ -0,0 +1,363 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.compression;
+
+import spark.utils.BufferPool;
+import spark.utils.DeflaterPool;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The body of a response, compressed with the encoding negotiated from the Accept-Encoding header of the request.
+ * Nothing is written until the body reaches the minimum size of the config, at most 8k, is flushed or is
+ * finished, only then is it decided from the content type and status of the response whether to compress.
+ * Responses that could be compressed get a "Vary: Accept-Encoding" header, whether or not this one is.
+ */
+public final class CompressingOutputStream extends OutputStream {
+
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String VARY = "Vary";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private enum State {
+        UNDECIDED, PLAIN, COMPRESSING, FINISHED
+    }
+
+    private final HttpServletResponse response;
+    private final CompressionConfig config;
+    private final String encoding;
+    // How much of a body of unknown length is held back before deciding, at most one pooled buffer
+    private final int holdBack;
+
+    private State state = State.UNDECIDED;
+    private OutputStream out;
+
+    private byte[] pending;
+    private int pendingCount;
+
+    private Deflater deflater;
+    private CRC32 crc;
+    private byte[] buffer;
+
+    /**
+     * @param response       the response
+     * @param config         the compression config
+     * @param acceptEncoding the Accept-Encoding header of the request, may be null
+     */
+    public CompressingOutputStream(HttpServletResponse response, CompressionConfig config, String acceptEncoding) {
+        this.response = response;
+        this.config = config;
+        this.encoding = negotiate(acceptEncoding);
+        this.holdBack = Math.min(config.minSize(), BufferPool.BUFFER_SIZE);
+    }
+
+    /**
+     * Decides whether to compress a body of a known length, before any of it is written
+     *
+     * @param length the length in bytes of the body
+     * @return true if the body is compressed, it must then be written to this stream, which must be finished,
+     * otherwise it is written to the response as it is
+     * @throws IOException if the response can't be written
+     */
+    public boolean compresses(long length) throws IOException {
+        if (state == State.UNDECIDED) {
+            decide(length);
+        }
+        return state == State.COMPRESSING;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (state == State.PLAIN) {
+            out.write(b);
+            return;
+        }
+        if (state == State.FINISHED) {
+            throw new IOException("Stream already finished");
+        }
+        // Single bytes, e.g. of a Writer, are collected in the pending buffer instead of deflated one by one
+        if (pending == null) {
+            pending = BufferPool.acquire();
+        }
+        pending[pendingCount++] = (byte) b;
+        if (state == State.UNDECIDED && pendingCount >= holdBack) {
+            decide(-1);
+        } else if (state == State.COMPRESSING && pendingCount == pending.length) {
+            deflatePending();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (state == State.UNDECIDED) {
+            if (pendingCount + len < holdBack) {
+                if (pending == null) {
+                    pending = BufferPool.acquire();
+                }
+                System.arraycopy(b, off, pending, pendingCount, len);
+                pendingCount += len;
+                return;
+            }
+            decide(-1);
+        }
+        if (state == State.COMPRESSING) {
+            deflatePending();
+            deflate(b, off, len);
+        } else if (state == State.PLAIN) {
+            out.write(b, off, len);
+        } else {
+            throw new IOException("Stream already finished");
+        }
+    }
+
+    /**
+     * Sends what has been written so far, compressing it if the response is compressed
+     *
+     * @throws IOException if the response can't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        if (state == State.UNDECIDED) {
+            decide(-1);
+        }
+        if (state == State.COMPRESSING) {
+            deflatePending();
+            drain(Deflater.SYNC_FLUSH);
+        }
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the rest of the body without closing the response, so that the container can still complete it
+     *
+     * @throws IOException if the response can't be written
+     */
+    public void finish() throws IOException {
+        if (state == State.UNDECIDED) {
+            decide(pendingCount);
+        }
+        if (state == State.COMPRESSING) {
+            deflatePending();
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer, 0, buffer.length);
+                out.write(buffer, 0, count);
+            }
+            if (GZIP.equals(encoding)) {
+                writeTrailer();
+            }
+        }
+        release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (state != State.FINISHED) {
+            finish();
+        }
+    }
+
+    /**
+     * Discards what has been written so far, once the container's buffer has been reset, so that another body
+     * can be written. Does nothing if the response has already been committed.
+     */
+    public void reset() {
+        if (response.isCommitted()) {
+            return;
+        }
+        if (state == State.COMPRESSING) {
+            response.setHeader(CONTENT_ENCODING, null);
+        }
+        release();
+        pendingCount = 0;
+        out = null;
+        state = State.UNDECIDED;
+    }
+
+    /**
+     * Gives the pooled deflater and buffers back, nothing more can be written afterwards. Finishing releases them
+     * too, this is for a body that isn't finished, because writing it failed. Does nothing if already released.
+     */
+    public void release() {
+        state = State.FINISHED;
+        if (deflater != null) {
+            DeflaterPool.release(deflater, GZIP.equals(encoding));
+            deflater = null;
+            crc = null;
+        }
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+        if (pending != null) {
+            BufferPool.release(pending);
+            pending = null;
+        }
+    }
+
+    private void decide(long length) throws IOException {
+        boolean compressible = compressible();
+        if (compressible) {
+            vary();
+        }
+        out = response.getOutputStream();
+        if (compressible && encoding != null && (length < 0 || length >= config.minSize())) {
+            response.setHeader(CONTENT_ENCODING, encoding);
+            boolean gzip = GZIP.equals(encoding);
+            deflater = DeflaterPool.acquire(config.level(), gzip);
+            buffer = BufferPool.acquire();
+            state = State.COMPRESSING;
+            if (gzip) {
+                crc = new CRC32();
+                out.write(GZIP_HEADER);
+            }
+            if (pendingCount > 0) {
+                deflate(pending, 0, pendingCount);
+            }
+        } else {
+            state = State.PLAIN;
+            if (length == pendingCount && !response.isCommitted()) {
+                response.setContentLength(pendingCount);
+            }
+            if (pendingCount > 0) {
+                out.write(pending, 0, pendingCount);
+            }
+        }
+        pendingCount = 0;
+    }
+
+    private boolean compressible() {
+        if (response.isCommitted() || response.containsHeader(CONTENT_ENCODING)) {
+            return false;
+        }
+        // Some containers report 0 until a status is set
+        int status = response.getStatus();
+        if ((status > 0 && status < 200) || status == HttpServletResponse.SC_NO_CONTENT
+                || status == HttpServletResponse.SC_NOT_MODIFIED) {
+            return false;
+        }
+        return config.compresses(response.getContentType());
+    }
+
+    private void vary() {
+        String vary = response.getHeader(VARY);
+        if (vary == null || vary.isEmpty()) {
+            response.setHeader(VARY, ACCEPT_ENCODING);
+        } else if (!vary.contains("*") && !vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            response.setHeader(VARY, vary + ", " + ACCEPT_ENCODING);
+        }
+    }
+
+    private void deflatePending() throws IOException {
+        if (pendingCount > 0) {
+            deflate(pending, 0, pendingCount);
+            pendingCount = 0;
+        }
+    }
+
+    private void deflate(byte[] b, int off, int len) throws IOException {
+        if (crc != null) {
+            crc.update(b, off, len);
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            int count = deflater.deflate(buffer, 0, buffer.length);
+            if (count > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private void drain(int flush) throws IOException {
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, flush);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length);
+    }
+
+    private void writeTrailer() throws IOException {
+        int checksum = (int) crc.getValue();
+        int size = (int) deflater.getBytesRead();
+        out.write(new byte[] {
+                (byte) checksum, (byte) (checksum >> 8), (byte) (checksum >> 16), (byte) (checksum >> 24),
+                (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)});
+    }
+
+    /**
+     * @param acceptEncoding an Accept-Encoding header, may be null
+     * @return gzip or deflate, whichever the header gives the higher quality, gzip if both are equal, or null if
+     * the header accepts neither
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            int separator = coding.indexOf(';');
+            String name = (separator < 0 ? coding : coding.substring(0, separator)).trim();
+            float quality = separator < 0 ? 1 : quality(coding.substring(separator + 1));
+            if (name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (name.equalsIgnoreCase(DEFLATE)) {
+                deflate = Math.max(deflate, quality);
+            } else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private static float quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                try {
+                    return Float.parseFloat(parameter.substring(equals + 1).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
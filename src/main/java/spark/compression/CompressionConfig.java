@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.compression;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Configures the gzip and deflate compression of response bodies. Rendered and streamed bodies of the included
+ * content types are compressed once they reach the minimum size, if the client accepts one of the encodings:
+ * <pre>
+ * compression(new CompressionConfig().minSize(512).include("text/csv"));
+ * </pre>
+ * Content types are matched without their parameters, either exactly or by a "type/*" pattern, exclusions take
+ * precedence over inclusions. A config is copied when it is set, later changes don't affect the routes already
+ * using it.
+ */
+public final class CompressionConfig {
+
+    /**
+     * Compresses nothing. Set on a route, it opts the route out of the global compression config, unlike null
+     * which lets the route inherit it. Can't be changed.
+     */
+    public static final CompressionConfig NONE = new CompressionConfig(false);
+
+    private final boolean enabled;
+    private int minSize = 1024;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private final Set<String> includedTypes = new LinkedHashSet<>(Arrays.asList(
+            "text/*", "application/json", "application/javascript", "application/xml", "image/svg+xml"));
+    private final Set<String> excludedTypes = new LinkedHashSet<>();
+
+    /**
+     * Creates a config with the default minimum size, level and content types
+     */
+    public CompressionConfig() {
+        this(true);
+    }
+
+    private CompressionConfig(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return a copy of this config, {@link #NONE} itself for {@link #NONE}
+     */
+    public CompressionConfig copy() {
+        if (!enabled) {
+            return this;
+        }
+        CompressionConfig copy = new CompressionConfig();
+        copy.minSize = minSize;
+        copy.level = level;
+        copy.includedTypes.clear();
+        copy.includedTypes.addAll(includedTypes);
+        copy.excludedTypes.addAll(excludedTypes);
+        return copy;
+    }
+
+    /**
+     * @return false for {@link #NONE}, true otherwise
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the size in bytes below which bodies are sent uncompressed
+     */
+    public int minSize() {
+        return minSize;
+    }
+
+    /**
+     * Sets the size below which bodies are sent uncompressed, 1k by default. Streamed bodies are held back until
+     * they reach it, or 8k if it is larger, or are flushed.
+     *
+     * @param minSize the size in bytes
+     * @return this config
+     */
+    public CompressionConfig minSize(int minSize) {
+        checkEnabled();
+        this.minSize = minSize;
+        return this;
+    }
+
+    /**
+     * @return the compression level
+     */
+    public int level() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     *
+     * @param level the level, {@link Deflater#DEFAULT_COMPRESSION} by default
+     * @return this config
+     */
+    public CompressionConfig level(int level) {
+        checkEnabled();
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Adds content types to compress. Text, JSON, JavaScript, XML and SVG are included by default.
+     *
+     * @param contentTypes content types or "type/*" patterns
+     * @return this config
+     */
+    public CompressionConfig include(String... contentTypes) {
+        checkEnabled();
+        for (String contentType : contentTypes) {
+            includedTypes.add(contentType.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * Adds content types never to compress, e.g. text types that are already compressed
+     *
+     * @param contentTypes content types or "type/*" patterns
+     * @return this config
+     */
+    public CompressionConfig exclude(String... contentTypes) {
+        checkEnabled();
+        for (String contentType : contentTypes) {
+            excludedTypes.add(contentType.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * @param contentType the content type of a response, with or without parameters
+     * @return true if bodies of the content type are compressed
+     */
+    public boolean compresses(String contentType) {
+        if (!enabled || contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String mimeType = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+        return !matches(excludedTypes, mimeType) && matches(includedTypes, mimeType);
+    }
+
+    private void checkEnabled() {
+        if (!enabled) {
+            throw new UnsupportedOperationException("CompressionConfig.NONE can't be changed");
+        }
+    }
+
+    private static boolean matches(Set<String> patterns, String mimeType) {
+        if (patterns.contains(mimeType)) {
+            return true;
+        }
+        int slash = mimeType.indexOf('/');
+        return slash > 0 && patterns.contains(mimeType.substring(0, slash + 1) + "*");
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.interceptor;
+
+import spark.route.PathPattern;
+import spark.route.RequestPath;
+import spark.utils.MediaType;
+import spark.utils.NegotiationCache;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The interceptors that may run for one phase of a request, in the order they were registered. Chains are
+ * resolved ahead of time for each route, so most interceptors are known to match without looking at their
+ * paths again. Only interceptors whose paths or accept types can't be decided up front are checked
+ * against the request.
+ */
+public final class InterceptorChain {
+
+    static final InterceptorChain EMPTY = new InterceptorChain(new Link[0], null);
+
+    private final Link[] links;
+    private final NegotiationCache<MediaType> negotiationCache;
+
+    InterceptorChain(Link[] links, NegotiationCache<MediaType> negotiationCache) {
+        this.links = links;
+        this.negotiationCache = negotiationCache;
+    }
+
+    /**
+     * @return the number of interceptors that may run
+     */
+    public int size() {
+        return links.length;
+    }
+
+    /**
+     * Matches an interceptor of the chain against the request
+     *
+     * @param index      the index of the interceptor in the chain
+     * @param path       the requested path
+     * @param acceptType the Accept header, may be null
+     * @return the match or null if the interceptor doesn't apply to the request
+     */
+    public InterceptorMatch match(int index, RequestPath path, String acceptType) {
+        Link link = links[index];
+
+        if (link.acceptTypes != null && acceptType != null
+                && negotiationCache.bestMatch(link.acceptTypes, Function.identity(), acceptType) == null) {
+            return null;
+        }
+        for (PathPattern excluded : link.excluded) {
+            if (excluded.matches(path)) {
+                return null;
+            }
+        }
+        PathPattern matched = link.included;
+        for (int i = 0; matched == null && i < link.candidates.length; i++) {
+            if (link.candidates[i].matches(path)) {
+                matched = link.candidates[i];
+            }
+        }
+        return matched != null ? new InterceptorMatch(matched, path, link.interceptor) : null;
+    }
+
+    /**
+     * An interceptor of a chain
+     */
+    static final class Link {
+        private final Interceptor interceptor;
+        private final PathPattern included;
+        private final PathPattern[] candidates;
+        private final PathPattern[] excluded;
+        private final List<MediaType> acceptTypes;
+
+        /**
+         * @param interceptor the interceptor
+         * @param included    the included pattern, if it is known to match. Null if the candidates have to be
+         *                    tried.
+         * @param candidates  the included patterns that may match, in order
+         * @param excluded    the excluded patterns that may match
+         * @param acceptTypes the accept types to negotiate or null if any type is accepted
+         */
+        Link(Interceptor interceptor,
+             PathPattern included,
+             PathPattern[] candidates,
+             PathPattern[] excluded,
+             List<MediaType> acceptTypes) {
+            this.interceptor = interceptor;
+            this.included = included;
+            this.candidates = candidates;
+            this.excluded = excluded;
+            this.acceptTypes = acceptTypes;
+        }
+    }
+
+}
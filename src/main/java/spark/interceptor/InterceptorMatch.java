@@ -2,6 +2,8 @@ package spark.interceptor;
 
 import spark.Match;
 import spark.route.HttpMethod;
+import spark.route.PathPattern;
+import spark.route.RequestPath;
 
 public class InterceptorMatch extends Match {
     public final Interceptor interceptor;
@@ -10,4 +12,9 @@ public class InterceptorMatch extends Match {
         super(matchedUri, requestUri);
         this.interceptor = interceptor;
     }
+
+    public InterceptorMatch(PathPattern matchedPattern, RequestPath requestPath, Interceptor interceptor) {
+        super(matchedPattern, requestPath);
+        this.interceptor = interceptor;
+    }
 }
@@ -1,12 +1,21 @@
 package spark.interceptor;
 
 import spark.route.HttpMethod;
+import spark.route.PathPattern;
+import spark.utils.MediaType;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import static java.util.Arrays.asList;
+import java.util.function.Function;
 
 /**
  *
@@ -14,17 +23,33 @@ import static java.util.Arrays.asList;
 public class InterceptorRegistration {
     public static enum InterceptionPhase { before, after }
 
-    public final Set<String> includedPaths = new HashSet<>();
-    public final Set<String> excludedPaths = new HashSet<>();
-    public final Set<String> acceptTypes = new HashSet<>();
-    public final Set<HttpMethod> httpMethods = EnumSet.noneOf(HttpMethod.class);
-    public final Set<InterceptionPhase> phases = EnumSet.noneOf(InterceptionPhase.class);
+    // Compiled patterns and parsed types by their source, so unchanged entries aren't compiled again
+    private final Map<String, PathPattern> compiledPatterns = new HashMap<>();
+    private final Map<String, MediaType> parsedMediaTypes = new HashMap<>();
+
+    public final Set<String> includedPaths = new CompilingSet<>(new LinkedHashSet<>());
+    public final Set<String> excludedPaths = new CompilingSet<>(new LinkedHashSet<>());
+    public final Set<String> acceptTypes = new CompilingSet<>(new LinkedHashSet<>());
+    public final Set<HttpMethod> httpMethods = new CompilingSet<>(EnumSet.noneOf(HttpMethod.class));
+    public final Set<InterceptionPhase> phases = new CompilingSet<>(EnumSet.noneOf(InterceptionPhase.class));
+
+    /**
+     * @deprecated set it with {@link #execute(Interceptor)}, assigning the field directly only takes effect
+     * with the next change of the registration
+     */
+    @Deprecated
+    public volatile Interceptor handler = (rq, rs) -> { /* Do nothing */ };
 
-    public Interceptor handler = (rq, rs) -> { /* Do nothing */ };
+    // The sets may be changed directly or through the fluent methods, also after the registration was added to
+    // the registry. Every change compiles them, with the handler, into a new immutable snapshot, which is all
+    // that is read while finding interceptors.
+    private volatile Compiled compiled = new Compiled(this);
+
+    // The registry this was added to, told about changes so it can resolve the interceptor chains again
+    volatile InterceptorRegistry registry;
 
     public InterceptorRegistration before() {
-        this.phases.add(InterceptionPhase.before);
-        return this;
+        return add(phases, InterceptionPhase.before);
     }
 
     public InterceptorRegistration before(String... paths) {
@@ -32,8 +57,7 @@ public class InterceptorRegistration {
     }
 
     public InterceptorRegistration after() {
-        this.phases.add(InterceptionPhase.after);
-        return this;
+        return add(phases, InterceptionPhase.after);
     }
 
     public InterceptorRegistration after(String... paths) {
@@ -41,45 +65,214 @@ public class InterceptorRegistration {
     }
 
     public InterceptorRegistration get() {
-        this.httpMethods.add(HttpMethod.get);
-        return this;
+        return add(httpMethods, HttpMethod.get);
     }
 
     public InterceptorRegistration post() {
-        this.httpMethods.add(HttpMethod.post);
-        return this;
+        return add(httpMethods, HttpMethod.post);
     }
 
     public InterceptorRegistration put() {
-        this.httpMethods.add(HttpMethod.put);
-        return this;
+        return add(httpMethods, HttpMethod.put);
     }
 
     public InterceptorRegistration patch() {
-        this.httpMethods.add(HttpMethod.patch);
-        return this;
+        return add(httpMethods, HttpMethod.patch);
     }
 
     public InterceptorRegistration on(String... paths) {
-        this.includedPaths.addAll(asList(paths));
-        return this;
+        return add(includedPaths, paths);
     }
 
     public InterceptorRegistration accepting(String... acceptTypes) {
-        this.acceptTypes.addAll(asList(acceptTypes));
-        return this;
+        return add(this.acceptTypes, acceptTypes);
     }
 
     public InterceptorRegistration except(String... paths) {
-        this.excludedPaths.addAll(asList(paths));
-        return this;
+        return add(excludedPaths, paths);
     }
 
     public InterceptorRegistration execute(Interceptor interceptor) {
-        this.handler = interceptor;
+        synchronized (this) {
+            this.handler = interceptor;
+            compile();
+        }
+        return changed();
+    }
+
+    /**
+     * @return the interceptor executed by this registration
+     */
+    public Interceptor handler() {
+        return compiled.handler;
+    }
+
+    /**
+     * @return the compiled included paths in the order they were added
+     */
+    public List<PathPattern> includedPatterns() {
+        return compiled.includedPatterns;
+    }
+
+    /**
+     * @return the compiled excluded paths in the order they were added
+     */
+    public List<PathPattern> excludedPatterns() {
+        return compiled.excludedPatterns;
+    }
+
+    /**
+     * @return the parsed accept types in the order they were added
+     */
+    public List<MediaType> acceptMediaTypes() {
+        return compiled.acceptMediaTypes;
+    }
+
+    /**
+     * @return the registration as it was configured last
+     */
+    Compiled compiled() {
+        return compiled;
+    }
+
+    private InterceptorRegistration changed() {
+        InterceptorRegistry registry = this.registry;
+        if (registry != null) {
+            registry.registrationChanged();
+        }
         return this;
     }
 
+    @SafeVarargs
+    private final <E> InterceptorRegistration add(Set<E> set, E... values) {
+        synchronized (this) {
+            ((CompilingSet<E>) set).values.addAll(Arrays.asList(values));
+            compile();
+        }
+        return changed();
+    }
+
+    private synchronized void compile() {
+        compiled = new Compiled(this);
+    }
+
+    /**
+     * A registration at one point in time, immutable so that it can be read without locking
+     */
+    static final class Compiled {
+        final List<PathPattern> includedPatterns;
+        final List<PathPattern> excludedPatterns;
+        final List<MediaType> acceptMediaTypes;
+        final Set<HttpMethod> httpMethods;
+        final Set<InterceptionPhase> phases;
+        final Interceptor handler;
+
+        // Called with the registration locked, or while it is constructed
+        private Compiled(InterceptorRegistration ir) {
+            includedPatterns = compile(ir.includedPaths, ir.compiledPatterns, PathPattern::compile);
+            excludedPatterns = compile(ir.excludedPaths, ir.compiledPatterns, PathPattern::compile);
+            acceptMediaTypes = compile(ir.acceptTypes, ir.parsedMediaTypes, MediaType::parse);
+            httpMethods = Collections.unmodifiableSet(EnumSet.copyOf(((CompilingSet<HttpMethod>) ir.httpMethods).values));
+            phases = Collections.unmodifiableSet(EnumSet.copyOf(((CompilingSet<InterceptionPhase>) ir.phases).values));
+            handler = ir.handler;
+        }
+
+        /**
+         * @return true if the registration applies to the phase and http method
+         */
+        boolean applies(InterceptionPhase phase, HttpMethod httpMethod) {
+            return (phases.isEmpty() || phases.contains(phase))
+                    && (httpMethods.isEmpty() || httpMethods.contains(httpMethod));
+        }
+
+        private static <T> List<T> compile(Set<String> sources, Map<String, T> cache, Function<String, T> compiler) {
+            List<T> compiled = new ArrayList<>(sources.size());
+            for (String source : sources) {
+                compiled.add(cache.computeIfAbsent(source, compiler));
+            }
+            return Collections.unmodifiableList(compiled);
+        }
+    }
+
+    /**
+     * A set of the registration that compiles it again whenever it is changed
+     */
+    private final class CompilingSet<E> extends AbstractSet<E> {
+        private final Set<E> values;
+
+        private CompilingSet(Set<E> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean add(E value) {
+            synchronized (InterceptorRegistration.this) {
+                if (!values.add(value)) {
+                    return false;
+                }
+                compile();
+            }
+            changed();
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object value) {
+            synchronized (InterceptorRegistration.this) {
+                if (!values.remove(value)) {
+                    return false;
+                }
+                compile();
+            }
+            changed();
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            synchronized (InterceptorRegistration.this) {
+                values.clear();
+                compile();
+            }
+            changed();
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return values.contains(value);
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            Iterator<E> iterator = values.iterator();
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    synchronized (InterceptorRegistration.this) {
+                        iterator.remove();
+                        compile();
+                    }
+                    changed();
+                }
+            };
+        }
+    }
+
     @Override
     public String toString() {
         return "InterceptorRegistration{" +
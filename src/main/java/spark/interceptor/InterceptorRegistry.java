@@ -1,62 +1,288 @@
 package spark.interceptor;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import spark.route.HttpMethod;
+import spark.route.PathPattern;
+import spark.route.PathTrie;
+import spark.route.RequestPath;
+import spark.route.RouteEntry;
+import spark.utils.MediaType;
+import spark.utils.NegotiationCache;
 import spark.utils.SparkUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static spark.PathMatcher.matches;
 import static spark.interceptor.InterceptorRegistration.InterceptionPhase;
-import static spark.utils.MimeParse.mimeMatches;
 
 /**
- *
+ * Holds the registered interceptors. The registrations are kept in an immutable snapshot published through a
+ * volatile reference and replaced on every change, so finding interceptors never locks.
+ * <p>
+ * The interceptor chain of a route is resolved once per snapshot by comparing the interceptor paths with the
+ * route pattern, see {@link #findChain(InterceptionPhase, RouteEntry, HttpMethod, RequestPath)}. Requests that
+ * match no route look up the included paths of all interceptors in a {@link PathTrie} instead.
  */
 public class InterceptorRegistry {
 
     private static final InterceptorRegistry instance = new InterceptorRegistry();
 
+    private static final PathPattern ALL_PATHS = PathPattern.compile(SparkUtils.ALL_PATHS);
+
+    private static final InterceptionPhase[] PHASES = InterceptionPhase.values();
+
     public static InterceptorRegistry get() {
         return instance;
     }
 
-    public final List<InterceptorRegistration> registrations = new ArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.<InterceptorRegistration>emptyList());
+
+    private final NegotiationCache<MediaType> negotiationCache = new NegotiationCache<>();
 
     private InterceptorRegistry() {
     }
 
-    public void clearInterceptors() {
-        registrations.clear();
+    public synchronized void clearInterceptors() {
+        replace(Collections.<InterceptorRegistration>emptyList());
+    }
+
+    /**
+     * @return the current registrations in the order they were added
+     */
+    public List<InterceptorRegistration> registrations() {
+        return snapshot.registrations;
+    }
+
+    /**
+     * Replaces all registrations at once, lookups see either the old or the new registrations
+     *
+     * @param replacement the new registrations
+     */
+    public synchronized void replaceInterceptors(List<InterceptorRegistration> replacement) {
+        replace(replacement);
+    }
+
+    /**
+     * @return the cache of accept type negotiations for interceptors limited to certain accept types
+     */
+    public NegotiationCache<MediaType> negotiationCache() {
+        return negotiationCache;
     }
 
-    public InterceptorRegistration addInterceptor(InterceptorRegistration registration) {
-        this.registrations.add(registration);
+    public synchronized InterceptorRegistration addInterceptor(InterceptorRegistration registration) {
+        List<InterceptorRegistration> plus = new ArrayList<>(snapshot.registrations.size() + 1);
+        plus.addAll(snapshot.registrations);
+        plus.add(registration);
+        replace(plus);
         return registration;
     }
 
+    /**
+     * Called by registrations that are configured after they were added, drops the resolved chains
+     */
+    synchronized void registrationChanged() {
+        replace(snapshot.registrations);
+    }
+
     public List<InterceptorMatch> findInterceptors(InterceptionPhase phase, HttpMethod httpMethod, String path, String acceptType) {
+        return findInterceptors(phase, httpMethod, new RequestPath(path), acceptType);
+    }
+
+    public List<InterceptorMatch> findInterceptors(InterceptionPhase phase, HttpMethod httpMethod, RequestPath path, String acceptType) {
+        InterceptorChain chain = findChain(phase, null, httpMethod, path);
+
         List<InterceptorMatch> matchResults = new ArrayList<>();
-        nextReg:
-        for (InterceptorRegistration ir : registrations) {
-            if (!ir.phases.isEmpty() && !ir.phases.contains(phase)) continue;
-            if (!ir.httpMethods.isEmpty() && !ir.httpMethods.contains(httpMethod)) continue;
-            if (!ir.acceptTypes.isEmpty() && acceptType != null && !mimeMatches(ir.acceptTypes, acceptType)) continue;
-            for (String excludedPath : ir.excludedPaths) {
-                if (matches(excludedPath, path)) continue nextReg;
+        for (int i = 0; i < chain.size(); i++) {
+            InterceptorMatch match = chain.match(i, path, acceptType);
+            if (match != null) {
+                matchResults.add(match);
             }
-            if (ir.includedPaths.isEmpty()) {
-                matchResults.add(new InterceptorMatch(httpMethod, acceptType, SparkUtils.ALL_PATHS, path, ir.handler));
-            } else {
-                for (String includedPath : ir.includedPaths) {
-                    if (matches(includedPath, path)) {
-                        matchResults.add(new InterceptorMatch(httpMethod, acceptType, includedPath, path, ir.handler));
+        }
+        return matchResults;
+    }
+
+    /**
+     * Finds the interceptors that may run for a request
+     *
+     * @param phase      the phase
+     * @param route      the route matching the request or null if no route matches
+     * @param httpMethod the http method of the request
+     * @param path       the requested path
+     * @return the chain, its interceptors still have to be matched against the request
+     */
+    public InterceptorChain findChain(InterceptionPhase phase, RouteEntry route, HttpMethod httpMethod, RequestPath path) {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot.registrations.isEmpty()) {
+            return InterceptorChain.EMPTY;
+        }
+        if (route == null || route.httpMethod != httpMethod) {
+            return snapshot.fallbackChain(phase, httpMethod, path, negotiationCache);
+        }
+
+        InterceptorChain[] chains = snapshot.routeChains.getIfPresent(route);
+        if (chains == null) {
+            chains = new InterceptorChain[PHASES.length];
+            for (InterceptionPhase routePhase : PHASES) {
+                chains[routePhase.ordinal()] = snapshot.routeChain(routePhase, route, negotiationCache);
+            }
+            snapshot.routeChains.put(route, chains);
+        }
+        return chains[phase.ordinal()];
+    }
+
+    private void replace(List<InterceptorRegistration> registrations) {
+        for (InterceptorRegistration registration : registrations) {
+            registration.registry = this;
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(new ArrayList<>(registrations)));
+        negotiationCache.invalidateAll();
+    }
+
+    private static List<MediaType> acceptTypes(InterceptorRegistration.Compiled ir) {
+        List<MediaType> acceptTypes = ir.acceptMediaTypes;
+        return acceptTypes.isEmpty() ? null : acceptTypes;
+    }
+
+    private static PathPattern[] toArray(List<PathPattern> patterns) {
+        return patterns.toArray(new PathPattern[patterns.size()]);
+    }
+
+    /**
+     * The registrations at one point in time, with the chains resolved for them
+     */
+    private static final class Snapshot {
+        private final List<InterceptorRegistration> registrations;
+
+        // The registrations as they were configured when the snapshot was taken
+        private final List<InterceptorRegistration.Compiled> compiled;
+
+        // Routes are compared by identity and dropped with their route table
+        private final Cache<RouteEntry, InterceptorChain[]> routeChains = CacheBuilder.newBuilder().weakKeys().build();
+
+        private volatile PathTrie<Include> includes;
+
+        private Snapshot(List<InterceptorRegistration> registrations) {
+            this.registrations = registrations;
+            this.compiled = new ArrayList<>(registrations.size());
+            for (InterceptorRegistration registration : registrations) {
+                compiled.add(registration.compiled());
+            }
+        }
+
+        /**
+         * Resolves the chain of a route. Interceptors whose paths are disjoint from the route pattern or that
+         * exclude all of its paths are left out, included paths that cover the route pattern need no matching.
+         */
+        private InterceptorChain routeChain(InterceptionPhase phase,
+                                            RouteEntry route,
+                                            NegotiationCache<MediaType> negotiationCache) {
+            List<InterceptorChain.Link> links = new ArrayList<>();
+            nextReg:
+            for (InterceptorRegistration.Compiled ir : compiled) {
+                if (!ir.applies(phase, route.httpMethod)) continue;
+
+                List<PathPattern> excluded = new ArrayList<>();
+                for (PathPattern excludedPath : ir.excludedPatterns) {
+                    if (excludedPath.covers(route.pattern)) continue nextReg;
+                    if (!excludedPath.isDisjointFrom(route.pattern)) {
+                        excluded.add(excludedPath);
+                    }
+                }
+
+                List<PathPattern> includedPatterns = ir.includedPatterns;
+                PathPattern included = includedPatterns.isEmpty() ? ALL_PATHS : null;
+                List<PathPattern> candidates = new ArrayList<>();
+                for (PathPattern includedPath : includedPatterns) {
+                    if (includedPath.covers(route.pattern)) {
+                        if (candidates.isEmpty()) {
+                            included = includedPath;
+                        } else {
+                            // Earlier candidates win if they match, this one matches otherwise
+                            candidates.add(includedPath);
+                        }
                         break;
                     }
+                    if (!includedPath.isDisjointFrom(route.pattern)) {
+                        candidates.add(includedPath);
+                    }
                 }
+                if (included == null && candidates.isEmpty()) continue;
+
+                links.add(new InterceptorChain.Link(ir.handler,
+                                                    included,
+                                                    toArray(candidates),
+                                                    toArray(excluded),
+                                                    acceptTypes(ir)));
             }
+            return links.isEmpty() ? InterceptorChain.EMPTY : new InterceptorChain(toLinkArray(links), negotiationCache);
+        }
+
+        /**
+         * Resolves the chain of a request matching no route, the included paths are looked up in the trie
+         */
+        private InterceptorChain fallbackChain(InterceptionPhase phase,
+                                               HttpMethod httpMethod,
+                                               RequestPath path,
+                                               NegotiationCache<MediaType> negotiationCache) {
+            PathPattern[] firstIncluded = new PathPattern[compiled.size()];
+            for (Include include : includes().find(path)) {
+                if (firstIncluded[include.registration] == null) {
+                    firstIncluded[include.registration] = include.pattern;
+                }
+            }
+
+            List<InterceptorChain.Link> links = new ArrayList<>();
+            for (int i = 0; i < compiled.size(); i++) {
+                InterceptorRegistration.Compiled ir = compiled.get(i);
+                if (!ir.applies(phase, httpMethod)) continue;
+
+                PathPattern included = ir.includedPatterns.isEmpty() ? ALL_PATHS : firstIncluded[i];
+                if (included == null) continue;
+
+                links.add(new InterceptorChain.Link(ir.handler,
+                                                    included,
+                                                    new PathPattern[0],
+                                                    toArray(ir.excludedPatterns),
+                                                    acceptTypes(ir)));
+            }
+            return links.isEmpty() ? InterceptorChain.EMPTY : new InterceptorChain(toLinkArray(links), negotiationCache);
+        }
+
+        /**
+         * @return the trie of the included paths of all registrations, built on first use
+         */
+        private PathTrie<Include> includes() {
+            PathTrie<Include> trie = includes;
+            if (trie == null) {
+                trie = new PathTrie<>();
+                for (int i = 0; i < compiled.size(); i++) {
+                    for (PathPattern included : compiled.get(i).includedPatterns) {
+                        trie.add(included, new Include(i, included));
+                    }
+                }
+                includes = trie;
+            }
+            return trie;
+        }
+
+        private static InterceptorChain.Link[] toLinkArray(List<InterceptorChain.Link> links) {
+            return links.toArray(new InterceptorChain.Link[links.size()]);
+        }
+    }
+
+    /**
+     * An included path of a registration
+     */
+    private static final class Include {
+        private final int registration;
+        private final PathPattern pattern;
+
+        private Include(int registration, PathPattern pattern) {
+            this.registration = registration;
+            this.pattern = pattern;
         }
-        return matchResults;
     }
 
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.multipart;
+
+import java.nio.file.Path;
+
+/**
+ * Configures how multipart/form-data request bodies are parsed. Parts up to the spool threshold are kept in
+ * memory, larger ones are written to temporary files in the spool directory, which are deleted once the request
+ * has been handled:
+ * <pre>
+ * multipartConfig(new MultipartConfig().spoolThreshold(64 * 1024).maxPartSize(100 * 1024 * 1024));
+ * </pre>
+ * A config is copied when it is set, later changes don't affect requests.
+ */
+public final class MultipartConfig {
+
+    private long spoolThreshold = 16 * 1024;
+    private long maxPartSize = -1;
+    private long maxTotalSize = -1;
+    private Path spoolDirectory;
+
+    /**
+     * @return a copy of this config
+     */
+    public MultipartConfig copy() {
+        MultipartConfig copy = new MultipartConfig();
+        copy.spoolThreshold = spoolThreshold;
+        copy.maxPartSize = maxPartSize;
+        copy.maxTotalSize = maxTotalSize;
+        copy.spoolDirectory = spoolDirectory;
+        return copy;
+    }
+
+    /**
+     * @return the size in bytes above which a part is written to disk
+     */
+    public long spoolThreshold() {
+        return spoolThreshold;
+    }
+
+    /**
+     * Sets the size above which a part is written to disk, 16k by default
+     *
+     * @param spoolThreshold the size in bytes
+     * @return this config
+     */
+    public MultipartConfig spoolThreshold(long spoolThreshold) {
+        this.spoolThreshold = spoolThreshold;
+        return this;
+    }
+
+    /**
+     * @return the maximum size in bytes of a part, negative if unlimited
+     */
+    public long maxPartSize() {
+        return maxPartSize;
+    }
+
+    /**
+     * Sets the maximum size of a part, requests with larger parts are answered with 413 (Request Entity Too
+     * Large)
+     *
+     * @param maxPartSize the maximum size in bytes, negative for no limit
+     * @return this config
+     */
+    public MultipartConfig maxPartSize(long maxPartSize) {
+        this.maxPartSize = maxPartSize;
+        return this;
+    }
+
+    /**
+     * @return the maximum size in bytes of all parts together, negative if unlimited
+     */
+    public long maxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * Sets the maximum size of all parts together, requests with larger parts are answered with 413 (Request
+     * Entity Too Large)
+     *
+     * @param maxTotalSize the maximum size in bytes, negative for no limit
+     * @return this config
+     */
+    public MultipartConfig maxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+        return this;
+    }
+
+    /**
+     * @return the directory large parts are written to, null for the default temporary directory
+     */
+    public Path spoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Sets the directory large parts are written to. Placing it on the same file system as their final
+     * destination lets handlers move spooled parts instead of copying them.
+     *
+     * @param spoolDirectory the directory, null for the default temporary directory
+     * @return this config
+     */
+    public MultipartConfig spoolDirectory(Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+        return this;
+    }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.multipart;
+
+import spark.utils.BufferPool;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses a multipart/form-data body as it is read from the client. The body goes through one pooled buffer,
+ * parts up to the spool threshold are copied out to memory and larger parts are written to temporary files,
+ * so the heap used per request is bounded whatever the size of the upload.
+ */
+public final class MultipartParser {
+
+    // The RFC limits boundaries to 70 characters, anything much longer is not worth buffering
+    private static final int MAX_BOUNDARY_LENGTH = 256;
+    private static final int MAX_HEADERS_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final Charset charset;
+    private final MultipartConfig config;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private long total;
+
+    /**
+     * @param in       the request body
+     * @param boundary the boundary, see {@link #boundary(String)}
+     * @param charset  the charset of the request, used for headers and for parts that name no charset
+     * @param config   the spooling and size configuration
+     */
+    public MultipartParser(InputStream in, String boundary, Charset charset, MultipartConfig config) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.charset = charset;
+        this.config = config;
+    }
+
+    /**
+     * @param contentType the content type of a request
+     * @return the boundary of a multipart content type, or null if the content type is not multipart or has no
+     * boundary
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+            return null;
+        }
+        String boundary = parameters(contentType).get("boundary");
+        return boundary != null && !boundary.isEmpty() ? boundary : null;
+    }
+
+    /**
+     * Reads the whole body. If parsing fails the parts spooled so far are deleted.
+     *
+     * @return the parts, in the order they were sent
+     * @throws MultipartException if the body is malformed or larger than the configuration allows
+     * @throws IOException        if the body can't be read or a part can't be spooled
+     */
+    public List<MultipartPart> parse() throws IOException {
+        if (delimiter.length > MAX_BOUNDARY_LENGTH) {
+            throw malformed("Multipart boundary is too long");
+        }
+        List<MultipartPart> parts = new ArrayList<>();
+        buffer = BufferPool.acquire();
+        try {
+            // The first boundary may start the body, as if it followed a line break
+            buffer[0] = '\r';
+            buffer[1] = '\n';
+            position = 0;
+            limit = 2;
+
+            // Skips the preamble
+            copyTo(null);
+            while (nextPart()) {
+                parts.add(readPart(readHeaders()));
+            }
+            return parts;
+        } catch (IOException | RuntimeException e) {
+            for (MultipartPart part : parts) {
+                try {
+                    part.delete();
+                } catch (IOException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+            }
+            throw e;
+        } finally {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Reads what follows a boundary
+     *
+     * @return true if a part follows, false if the boundary closes the body
+     */
+    private boolean nextPart() throws IOException {
+        while (limit - position < 2) {
+            if (!fill()) {
+                throw malformed("Unexpected end of multipart body");
+            }
+        }
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            // The epilogue is ignored
+            return false;
+        }
+        // Skips transport padding up to the end of the boundary line
+        readLine();
+        return true;
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int size = 0;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            size += line.length();
+            if (size > MAX_HEADERS_SIZE) {
+                throw malformed("Multipart headers are too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private MultipartPart readPart(Map<String, String> headers) throws IOException {
+        Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+        SpoolingOutputStream out = new SpoolingOutputStream();
+        try {
+            copyTo(out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            out.discard(e);
+            throw e;
+        }
+        return new MultipartPart(headers, partCharset(headers.get("content-type")), disposition.get("name"),
+                                 disposition.get("filename"), out.bytes(), out.path, out.size);
+    }
+
+    private Charset partCharset(String contentType) {
+        String name = contentType != null ? parameters(contentType).get("charset") : null;
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                // Falls back to the request charset
+            }
+        }
+        return charset;
+    }
+
+    /**
+     * Copies the body up to the next delimiter, and skips the delimiter
+     *
+     * @param out where to copy to, null to skip the content
+     */
+    private void copyTo(OutputStream out) throws IOException {
+        while (true) {
+            int index = indexOfDelimiter();
+            if (index >= 0) {
+                if (out != null) {
+                    out.write(buffer, position, index - position);
+                }
+                position = index + delimiter.length;
+                return;
+            }
+            // Keeps the bytes that could be the start of a delimiter
+            int end = Math.max(position, limit - delimiter.length + 1);
+            if (out != null) {
+                out.write(buffer, position, end - position);
+            }
+            position = end;
+            if (!fill()) {
+                throw malformed("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        for (int i = position; i <= last; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String readLine() throws IOException {
+        int from = position;
+        while (true) {
+            for (int i = from; i < limit - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, position, i - position, charset);
+                    position = i + 2;
+                    return line;
+                }
+            }
+            if (limit - position == buffer.length) {
+                throw malformed("Multipart header line is too long");
+            }
+            // Rescans the last byte, it could be the carriage return of a line break split across reads
+            int scanned = Math.max(position, limit - 1) - position;
+            if (!fill()) {
+                throw malformed("Unexpected end of multipart body");
+            }
+            from = position + scanned;
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more
+     *
+     * @return false if the body has ended
+     */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        int count = in.read(buffer, limit, buffer.length - limit);
+        if (count < 0) {
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    private static MultipartException malformed(String message) {
+        return new MultipartException(HttpServletResponse.SC_BAD_REQUEST, message);
+    }
+
+    /**
+     * Parses the parameters of a header value such as <code>form-data; name="field"; filename="a.txt"</code>
+     *
+     * @return the parameters keyed by lower case name, without quotes
+     */
+    private static Map<String, String> parameters(String value) {
+        Map<String, String> parameters = new HashMap<>();
+        int i = value.indexOf(';');
+        while (i >= 0 && i < value.length()) {
+            int equals = value.indexOf('=', i);
+            if (equals < 0) {
+                break;
+            }
+            String name = value.substring(i + 1, equals).trim().toLowerCase(Locale.ROOT);
+            StringBuilder parameter = new StringBuilder();
+            i = equals + 1;
+            while (i < value.length() && value.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < value.length() && value.charAt(i) == '"') {
+                for (i++; i < value.length() && value.charAt(i) != '"'; i++) {
+                    char c = value.charAt(i);
+                    if (c == '\\' && i + 1 < value.length()) {
+                        c = value.charAt(++i);
+                    }
+                    parameter.append(c);
+                }
+                i = value.indexOf(';', i);
+            } else {
+                int end = value.indexOf(';', i);
+                parameter.append(value, i, end < 0 ? value.length() : end);
+                i = end;
+            }
+            parameters.put(name, parameter.toString().trim());
+        }
+        return parameters;
+    }
+
+    /**
+     * Keeps a part in memory up to the spool threshold, and moves it to a temporary file beyond
+     */
+    private final class SpoolingOutputStream extends OutputStream {
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private OutputStream file;
+        private Path path;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            size += length;
+            total += length;
+            if (config.maxPartSize() >= 0 && size > config.maxPartSize()) {
+                throw tooLarge("Multipart part is larger than " + config.maxPartSize() + " bytes");
+            }
+            if (config.maxTotalSize() >= 0 && total > config.maxTotalSize()) {
+                throw tooLarge("Multipart body is larger than " + config.maxTotalSize() + " bytes");
+            }
+            if (file == null && size > config.spoolThreshold()) {
+                Path directory = config.spoolDirectory();
+                path = directory != null
+                        ? Files.createTempFile(directory, "spark-part-", null)
+                        : Files.createTempFile("spark-part-", null);
+                file = Files.newOutputStream(path);
+                memory.writeTo(file);
+                memory = null;
+            }
+            if (file != null) {
+                file.write(bytes, offset, length);
+            } else {
+                memory.write(bytes, offset, length);
+            }
+        }
+
+        private MultipartException tooLarge(String message) {
+            return new MultipartException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, message);
+        }
+
+        /**
+         * Closes and deletes the spooled file of a part that couldn't be read
+         */
+        void discard(Exception cause) {
+            try {
+                close();
+                if (path != null) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+
+        byte[] bytes() {
+            return memory != null ? memory.toByteArray() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                file.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.multipart;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A part of a multipart/form-data request body. Small parts are kept in memory, large ones are spooled to a
+ * temporary file that is deleted once the request has been handled, unless it has been moved with
+ * {@link #moveTo(Path)}.
+ */
+public final class MultipartPart {
+
+    private final String name;
+    private final String fileName;
+    private final String contentType;
+    private final Map<String, String> headers;
+    private final Charset charset;
+    private final long size;
+    private final byte[] bytes;
+    private volatile Path path;
+    private volatile boolean moved;
+
+    MultipartPart(Map<String, String> headers, Charset charset, String name, String fileName, byte[] bytes,
+                  Path path, long size) {
+        this.headers = Collections.unmodifiableMap(headers);
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = headers.get("content-type");
+        this.charset = charset;
+        this.bytes = bytes;
+        this.path = path;
+        this.size = size;
+    }
+
+    /**
+     * @return the name of the form field
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the file name sent by the client, null if the part is not a file
+     */
+    public String fileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the content type of the part, null if the client sent none
+     */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @param header the header name, case insensitive
+     * @return the value of the part header, or null if it is not present
+     */
+    public String header(String header) {
+        return headers.get(header.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the part headers, keyed by lower case name
+     */
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    /**
+     * @return the size of the part content in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the part content is held in memory, false if it has been spooled to disk
+     */
+    public boolean isInMemory() {
+        return path == null;
+    }
+
+    /**
+     * @return the file the part has been spooled to, or null if the part is held in memory
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return the part content, read from disk if the part has been spooled
+     * @throws UncheckedIOException if the spooled file can't be read
+     */
+    public byte[] bytes() {
+        try {
+            return path == null ? bytes : Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the part content decoded with the charset of the part content type, or with the charset of the
+     * request if the part names none
+     * @throws UncheckedIOException if the spooled file can't be read
+     */
+    public String value() {
+        return new String(bytes(), charset);
+    }
+
+    /**
+     * @return a stream over the part content
+     * @throws UncheckedIOException if the spooled file can't be opened
+     */
+    public InputStream inputStream() {
+        try {
+            return path == null ? new ByteArrayInputStream(bytes) : Files.newInputStream(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the part content to the target file. A spooled part is moved rather than copied when the target is
+     * on the same file system, and is no longer deleted once the request has been handled.
+     *
+     * @param target the target file, replaced if it exists
+     * @return the target
+     * @throws UncheckedIOException if the content can't be moved
+     */
+    public Path moveTo(Path target) {
+        try {
+            if (path == null) {
+                Files.write(target, bytes);
+            } else {
+                Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        moved = true;
+        path = target;
+        return target;
+    }
+
+    /**
+     * Deletes the spooled file, unless the part has been moved
+     *
+     * @throws IOException if the file can't be deleted
+     */
+    public void delete() throws IOException {
+        Path spooled = path;
+        if (spooled != null && !moved) {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+}
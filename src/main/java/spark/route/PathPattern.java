@@ -0,0 +1,359 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import spark.utils.SparkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A route pattern (e.g. /hello/:name/*) compiled into an immutable array of segments, where each segment
+ * is known to be a literal, a ':param' or a '*' splat. Patterns are compiled once when a route or an
+ * interceptor is registered and matched against a {@link RequestPath} without any further splitting.
+ * <p>
+ * Each ':param' segment gets a slot, numbered from 0 in the order the params appear in the pattern.
+ * Param names are resolved to slots through a case insensitive perfect hash table built at compile time.
+ */
+public final class PathPattern {
+
+    /**
+     * The kind of a pattern segment
+     */
+    public enum SegmentType {
+        LITERAL, PARAM, SPLAT
+    }
+
+    private final String pattern;
+    private final String[] segments;
+    private final SegmentType[] types;
+    private final boolean endsWithStar;
+    private final boolean endsWithSlash;
+    private final boolean literal;
+
+    private final int[] paramSegments;
+    private final String[] paramNames;
+    private final String[] paramKeys;
+    private final int[] paramTable;
+    private final int paramSeed;
+
+    private PathPattern(String pattern) {
+        List<String> parts = SparkUtils.convertRouteToList(pattern);
+
+        this.pattern = pattern;
+        this.segments = parts.toArray(new String[parts.size()]);
+        this.types = new SegmentType[segments.length];
+        this.endsWithStar = pattern.endsWith("*");
+        this.endsWithSlash = pattern.endsWith("/");
+
+        boolean allLiterals = true;
+        for (int i = 0; i < segments.length; i++) {
+            if (SparkUtils.isParam(segments[i])) {
+                types[i] = SegmentType.PARAM;
+            } else if (SparkUtils.isSplat(segments[i])) {
+                types[i] = SegmentType.SPLAT;
+            } else {
+                types[i] = SegmentType.LITERAL;
+            }
+            allLiterals &= types[i] == SegmentType.LITERAL;
+        }
+        this.literal = allLiterals && !endsWithStar;
+
+        List<Integer> params = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            if (types[i] == SegmentType.PARAM) {
+                params.add(i);
+            }
+        }
+        this.paramSegments = new int[params.size()];
+        this.paramNames = new String[params.size()];
+        this.paramKeys = new String[params.size()];
+        for (int slot = 0; slot < paramSegments.length; slot++) {
+            paramSegments[slot] = params.get(slot);
+            paramNames[slot] = segments[paramSegments[slot]].substring(1);
+            paramKeys[slot] = segments[paramSegments[slot]].toLowerCase();
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(1, paramSegments.length * 2 - 1)) << 1;
+        int seed = 1;
+        int[] table;
+        while ((table = buildParamTable(tableSize, seed)) == null) {
+            seed += 2;
+            if (seed > 64 * tableSize) {
+                tableSize <<= 1;
+                seed = 1;
+            }
+        }
+        this.paramTable = table;
+        this.paramSeed = seed;
+    }
+
+    /**
+     * Builds a table without collisions where each distinct param name maps to its last slot, as a later
+     * param with the same name hides an earlier one. Returns null if two names collide for this seed.
+     */
+    private int[] buildParamTable(int tableSize, int seed) {
+        int[] table = new int[tableSize];
+        for (int slot = 0; slot < paramNames.length; slot++) {
+            String name = paramNames[slot];
+            int index = tableIndex(name, 0, name.length(), seed, tableSize);
+            int existing = table[index] - 1;
+            if (existing >= 0 && !paramNames[existing].equalsIgnoreCase(name)) {
+                return null;
+            }
+            table[index] = slot + 1;
+        }
+        return table;
+    }
+
+    /**
+     * Seeded, case insensitive FNV-1a hash of name[start, end), reduced to an index of the table
+     */
+    private static int tableIndex(String name, int start, int end, int seed, int tableSize) {
+        int hash = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ Character.toLowerCase(Character.toUpperCase(name.charAt(i)))) * 0x01000193;
+        }
+        return (hash ^ (hash >>> 16)) & (tableSize - 1);
+    }
+
+    /**
+     * Compiles the given route pattern
+     *
+     * @param pattern the route pattern
+     * @return the compiled pattern
+     */
+    public static PathPattern compile(String pattern) {
+        return new PathPattern(pattern);
+    }
+
+    /**
+     * Checks if the requested path is matched by this pattern. Works exactly as
+     * {@link spark.PathMatcher#matches(String, String)}.
+     *
+     * @param path the requested path
+     * @return true if the path is matched
+     */
+    public boolean matches(RequestPath path) {
+        if (!endsWithStar && endsWithSlash != path.endsWithSlash()) {
+            // One and not both ends with slash
+            return false;
+        }
+
+        int size = segments.length;
+        int pathSize = path.size();
+
+        if (size == pathSize) {
+            return matchesFirst(size, path);
+        }
+        if (!endsWithStar) {
+            return false;
+        }
+        if (pathSize == size - 1 && path.endsWithSlash()) {
+            // Trailing slash matches a wildcard one level deeper, e.g. '/foo/' and '/foo/*'
+            return types[size - 1] != SegmentType.LITERAL && matchesFirst(size - 1, path);
+        }
+        return size < pathSize && matchesFirst(size, path);
+    }
+
+    /**
+     * Checks if this pattern matches every path the other pattern matches. Only decides from the segments
+     * of both patterns, so it may answer false for patterns that do cover each other in a roundabout way,
+     * but never answers true for patterns that don't.
+     *
+     * @param other the other pattern
+     * @return true if every path matched by the other pattern is matched by this pattern
+     */
+    public boolean covers(PathPattern other) {
+        if (pattern.equals(other.pattern)) {
+            return true;
+        }
+        int size = segments.length;
+        if (!endsWithStar) {
+            // Only matches paths of its own size, the other pattern must too
+            if (other.endsWithStar || other.size() != size || other.endsWithSlash != endsWithSlash) {
+                return false;
+            }
+        } else if (size == 0 || types[size - 1] == SegmentType.LITERAL || other.size() < size) {
+            // Matches any path that starts like it, the other pattern must not match shorter paths
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (types[i] == SegmentType.LITERAL
+                    && (other.types[i] != SegmentType.LITERAL || !other.segments[i].equals(segments[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if no path is matched by both this and the other pattern. Like {@link #covers(PathPattern)} it
+     * may answer false for patterns that are in fact disjoint, but never answers true for patterns that
+     * aren't.
+     *
+     * @param other the other pattern
+     * @return true if no path is matched by both patterns
+     */
+    public boolean isDisjointFrom(PathPattern other) {
+        int size = segments.length;
+        int otherSize = other.segments.length;
+        int compared = Math.min(size, otherSize) - 1;
+
+        if (!endsWithStar && !other.endsWithStar) {
+            if (size != otherSize || endsWithSlash != other.endsWithSlash) {
+                return true;
+            }
+            compared = size;
+        } else if (!endsWithStar) {
+            if (size < otherSize - 1) {
+                return true;
+            }
+        } else if (!other.endsWithStar) {
+            if (otherSize < size - 1) {
+                return true;
+            }
+        }
+        // Segments before the last one are compared in any path matched by either pattern
+        for (int i = 0; i < compared; i++) {
+            if (types[i] == SegmentType.LITERAL
+                    && other.types[i] == SegmentType.LITERAL
+                    && !segments[i].equals(other.segments[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesFirst(int count, RequestPath path) {
+        for (int i = 0; i < count; i++) {
+            if (types[i] == SegmentType.LITERAL && !path.segmentEquals(i, segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the pattern as registered
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int size() {
+        return segments.length;
+    }
+
+    /**
+     * @param index the segment index
+     * @return the segment as written in the pattern, e.g. 'hello', ':name' or '*'
+     */
+    public String segment(int index) {
+        return segments[index];
+    }
+
+    /**
+     * @param index the segment index
+     * @return the segment type
+     */
+    public SegmentType type(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return the number of ':param' segments, i.e. param slots
+     */
+    public int paramCount() {
+        return paramSegments.length;
+    }
+
+    /**
+     * @param slot the param slot
+     * @return the index of the segment holding the param
+     */
+    public int paramSegment(int slot) {
+        return paramSegments[slot];
+    }
+
+    /**
+     * @param slot the param slot
+     * @return the param name as written in the pattern, without the leading ':'
+     */
+    public String paramName(int slot) {
+        return paramNames[slot];
+    }
+
+    /**
+     * @param slot the param slot
+     * @return the lower case param name with the leading ':', as used by {@link spark.Request#params()}
+     */
+    public String paramKey(int slot) {
+        return paramKeys[slot];
+    }
+
+    /**
+     * Finds the slot of a param, without creating any strings. The name is matched case insensitively.
+     *
+     * @param name the param name, with or without the leading ':'
+     * @return the slot or -1 if there is no such param
+     */
+    public int paramSlot(String name) {
+        if (paramSegments.length == 0) {
+            return -1;
+        }
+        int start = name.startsWith(":") ? 1 : 0;
+        int length = name.length() - start;
+        int slot = paramTable[tableIndex(name, start, name.length(), paramSeed, paramTable.length)] - 1;
+        if (slot >= 0
+                && paramNames[slot].length() == length
+                && paramNames[slot].regionMatches(true, 0, name, start, length)) {
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the pattern ends with '*' and therefore also matches deeper paths
+     */
+    public boolean endsWithStar() {
+        return endsWithStar;
+    }
+
+    /**
+     * @return true if the pattern ends with '/'
+     */
+    public boolean endsWithSlash() {
+        return endsWithSlash;
+    }
+
+    /**
+     * @return true if the pattern contains no params or splats and doesn't end with '*'
+     */
+    public boolean isLiteral() {
+        return literal;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Segment level trie of route patterns. Literal segments are looked up by hash, ':param' and '*' segments
+ * share a single wildcard branch per level, so the cost of a lookup depends on the depth of the requested
+ * path and not on the number of patterns added. Matching follows the rules of
+ * {@link PathPattern#matches(RequestPath)} and the values are returned in the order they were added, which
+ * keeps Sinatra's first-registered-wins precedence.
+ * <p>
+ * {@link #add(PathPattern, Object)} changes the trie in place, {@link #plus(PathPattern, Object)} leaves it
+ * untouched and returns a new trie that shares all nodes not on the path of the added pattern. A trie that
+ * is only ever extended with plus can be read by any number of threads without locking.
+ *
+ * @param <T> the type of the values bound to the patterns
+ */
+public class PathTrie<T> {
+
+    private final Node<T> root;
+
+    private int size;
+
+    public PathTrie() {
+        this(new Node<>(), 0);
+    }
+
+    private PathTrie(Node<T> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Adds a value for the given pattern
+     *
+     * @param pattern the route pattern, e.g. /hello/:name or /files/*
+     * @param value   the value
+     */
+    public void add(String pattern, T value) {
+        add(PathPattern.compile(pattern), value);
+    }
+
+    /**
+     * Adds a value for the given pattern
+     *
+     * @param pattern the compiled route pattern
+     * @param value   the value
+     */
+    public void add(PathPattern pattern, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < pattern.size(); i++) {
+            if (pattern.type(i) == PathPattern.SegmentType.LITERAL) {
+                node = node.literal(pattern.segment(i));
+            } else {
+                node = node.wildcard();
+            }
+        }
+        node.terminals.add(new Terminal<>(value, size++, pattern.endsWithStar(), pattern.endsWithSlash()));
+    }
+
+    /**
+     * Returns a new trie with the value added for the given pattern, this trie is not changed. Only the
+     * nodes on the path of the pattern are copied.
+     *
+     * @param pattern the compiled route pattern
+     * @param value   the value
+     * @return the new trie
+     */
+    public PathTrie<T> plus(PathPattern pattern, T value) {
+        PathTrie<T> trie = new PathTrie<>(root.copy(), size);
+        Node<T> node = trie.root;
+        for (int i = 0; i < pattern.size(); i++) {
+            if (pattern.type(i) == PathPattern.SegmentType.LITERAL) {
+                node = node.copiedLiteral(pattern.segment(i));
+            } else {
+                node = node.copiedWildcard();
+            }
+        }
+        node.terminals.add(new Terminal<>(value, trie.size++, pattern.endsWithStar(), pattern.endsWithSlash()));
+        return trie;
+    }
+
+    /**
+     * Finds the values whose pattern matches the given path
+     *
+     * @param path the requested path
+     * @return the matching values in the order they were added
+     */
+    public List<T> find(String path) {
+        return find(new RequestPath(path));
+    }
+
+    /**
+     * Finds the values whose pattern matches the given path
+     *
+     * @param path the requested path
+     * @return the matching values in the order they were added
+     */
+    public List<T> find(RequestPath path) {
+        // Created on the first match only, a miss allocates nothing
+        List<Terminal<T>> found = collect(root, path, 0, null);
+
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        if (found.size() == 1) {
+            return Collections.singletonList(found.get(0).value);
+        }
+        Collections.sort(found);
+        List<T> values = new ArrayList<>(found.size());
+        for (Terminal<T> terminal : found) {
+            values.add(terminal.value);
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of patterns added
+     */
+    public int size() {
+        return size;
+    }
+
+    private static <T> List<Terminal<T>> collect(Node<T> node, RequestPath path, int depth,
+                                                 List<Terminal<T>> found) {
+        boolean endsWithSlash = path.endsWithSlash();
+
+        if (depth == path.size()) {
+            for (Terminal<T> terminal : node.terminals) {
+                if (terminal.endsWithStar || terminal.endsWithSlash == endsWithSlash) {
+                    found = add(found, terminal);
+                }
+            }
+            // A path with a trailing slash matches a pattern ending with a wildcard one level deeper,
+            // e.g. '/foo/' is matched by '/foo/*'
+            if (endsWithSlash && node.wildcard != null) {
+                for (Terminal<T> terminal : node.wildcard.terminals) {
+                    if (terminal.endsWithStar) {
+                        found = add(found, terminal);
+                    }
+                }
+            }
+            return found;
+        }
+
+        // Patterns ending with a wildcard also match any deeper path
+        for (Terminal<T> terminal : node.terminals) {
+            if (terminal.endsWithStar) {
+                found = add(found, terminal);
+            }
+        }
+        Node<T> literal = node.findLiteral(path, depth);
+        if (literal != null) {
+            found = collect(literal, path, depth + 1, found);
+        }
+        if (node.wildcard != null) {
+            found = collect(node.wildcard, path, depth + 1, found);
+        }
+        return found;
+    }
+
+    private static <T> List<Terminal<T>> add(List<Terminal<T>> found, Terminal<T> terminal) {
+        if (found == null) {
+            found = new ArrayList<>(2);
+        }
+        found.add(terminal);
+        return found;
+    }
+
+    /**
+     * A trie node. Literal children are kept in a small open addressing table so that they can be looked up
+     * directly from the segment offsets of a {@link RequestPath} without creating substrings.
+     */
+    private static final class Node<T> {
+        private final List<Terminal<T>> terminals;
+        private String[] keys;
+        private int[] hashes;
+        private Node<T>[] children;
+        private int literals;
+        private Node<T> wildcard;
+
+        private Node() {
+            terminals = new ArrayList<>(1);
+        }
+
+        private Node(Node<T> node) {
+            terminals = new ArrayList<>(node.terminals);
+            keys = node.keys != null ? node.keys.clone() : null;
+            hashes = node.hashes != null ? node.hashes.clone() : null;
+            children = node.children != null ? node.children.clone() : null;
+            literals = node.literals;
+            wildcard = node.wildcard;
+        }
+
+        /**
+         * @return a copy of this node, the children are shared
+         */
+        private Node<T> copy() {
+            return new Node<>(this);
+        }
+
+        private Node<T> wildcard() {
+            if (wildcard == null) {
+                wildcard = new Node<>();
+            }
+            return wildcard;
+        }
+
+        /**
+         * Like {@link #wildcard()}, but replaces an existing child by a copy first. Only to be called on a copy.
+         */
+        private Node<T> copiedWildcard() {
+            if (wildcard != null) {
+                wildcard = wildcard.copy();
+            }
+            return wildcard();
+        }
+
+        /**
+         * Like {@link #literal(String)}, but replaces an existing child by a copy first. Only to be called on
+         * a copy.
+         */
+        private Node<T> copiedLiteral(String segment) {
+            if (keys != null) {
+                int hash = segment.hashCode();
+                int mask = keys.length - 1;
+                for (int index = spread(hash) & mask; keys[index] != null; index = (index + 1) & mask) {
+                    if (hashes[index] == hash && keys[index].equals(segment)) {
+                        children[index] = children[index].copy();
+                        return children[index];
+                    }
+                }
+            }
+            return literal(segment);
+        }
+
+        private Node<T> literal(String segment) {
+            if (keys == null) {
+                resize(4);
+            }
+            int hash = segment.hashCode();
+            int mask = keys.length - 1;
+            int index = spread(hash) & mask;
+            while (keys[index] != null) {
+                if (hashes[index] == hash && keys[index].equals(segment)) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            if ((literals + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+                return literal(segment);
+            }
+            Node<T> child = new Node<>();
+            keys[index] = segment;
+            hashes[index] = hash;
+            children[index] = child;
+            literals++;
+            return child;
+        }
+
+        private Node<T> findLiteral(RequestPath path, int segment) {
+            if (keys == null) {
+                return null;
+            }
+            int hash = path.segmentHash(segment);
+            int mask = keys.length - 1;
+            int index = spread(hash) & mask;
+            while (keys[index] != null) {
+                if (hashes[index] == hash && path.segmentEquals(segment, keys[index])) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void resize(int capacity) {
+            String[] oldKeys = keys;
+            Node<T>[] oldChildren = children;
+
+            keys = new String[capacity];
+            hashes = new int[capacity];
+            children = new Node[capacity];
+
+            if (oldKeys != null) {
+                int mask = capacity - 1;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        int hash = oldKeys[i].hashCode();
+                        int index = spread(hash) & mask;
+                        while (keys[index] != null) {
+                            index = (index + 1) & mask;
+                        }
+                        keys[index] = oldKeys[i];
+                        hashes[index] = hash;
+                        children[index] = oldChildren[i];
+                    }
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Terminal<T> implements Comparable<Terminal<T>> {
+        private final T value;
+        private final int order;
+        private final boolean endsWithStar;
+        private final boolean endsWithSlash;
+
+        private Terminal(T value, int order, boolean endsWithStar, boolean endsWithSlash) {
+            this.value = value;
+            this.order = order;
+            this.endsWithStar = endsWithStar;
+            this.endsWithSlash = endsWithSlash;
+        }
+
+        @Override
+        public int compareTo(Terminal<T> o) {
+            return Integer.compare(order, o.order);
+        }
+    }
+
+}
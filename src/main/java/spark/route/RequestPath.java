@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+/**
+ * A requested path split into its non empty segments. The path is tokenized once per request into segment
+ * offsets, segments are compared in place and only turned into strings when asked for.
+ */
+public final class RequestPath {
+
+    private final String path;
+    private final int[] offsets;
+    private final int size;
+
+    /**
+     * Constructor
+     *
+     * @param path the requested path, e.g. /hello/world
+     */
+    public RequestPath(String path) {
+        this.path = path;
+
+        int count = 0;
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/')) {
+                count++;
+            }
+        }
+
+        this.size = count;
+        this.offsets = new int[count * 2];
+
+        int segment = 0;
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean separator = i == length || path.charAt(i) == '/';
+            if (separator && start >= 0) {
+                offsets[segment++] = start;
+                offsets[segment++] = i;
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+    }
+
+    /**
+     * @return the requested path
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the path ends with '/'
+     */
+    public boolean endsWithSlash() {
+        return path.endsWith("/");
+    }
+
+    /**
+     * @param index the segment index
+     * @return the index of the first character of the segment in the path
+     */
+    public int start(int index) {
+        return offsets[index * 2];
+    }
+
+    /**
+     * @param index the segment index
+     * @return the index after the last character of the segment in the path
+     */
+    public int end(int index) {
+        return offsets[index * 2 + 1];
+    }
+
+    /**
+     * @param index the segment index
+     * @return the segment
+     */
+    public String segment(int index) {
+        return path.substring(start(index), end(index));
+    }
+
+    /**
+     * Compares a segment to the given string without extracting it
+     *
+     * @param index the segment index
+     * @param value the value to compare with
+     * @return true if the segment equals the value
+     */
+    public boolean segmentEquals(int index, String value) {
+        int start = start(index);
+        int length = end(index) - start;
+        return value.length() == length && path.regionMatches(start, value, 0, length);
+    }
+
+    /**
+     * @param index the segment index
+     * @return the same hash code as {@link String#hashCode()} of the segment
+     */
+    public int segmentHash(int index) {
+        int hash = 0;
+        for (int i = start(index), end = end(index); i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
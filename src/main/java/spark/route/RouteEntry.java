@@ -1,7 +1,7 @@
 package spark.route;
 
-import spark.PathMatcher;
 import spark.RouteImpl;
+import spark.utils.MediaType;
 
 /**
  * Created by Per Wendel on 2014-05-10.
@@ -9,18 +9,26 @@ import spark.RouteImpl;
 public class RouteEntry {
     public final HttpMethod httpMethod;
     public final String path;
+    public final PathPattern pattern;
     public final String acceptedType;
+    public final MediaType acceptedMediaType;
     public final RouteImpl route;
 
     public RouteEntry(HttpMethod httpMethod, String path, String acceptedType, RouteImpl route) {
         this.httpMethod = httpMethod;
         this.path = path;
+        this.pattern = PathPattern.compile(path);
         this.acceptedType = acceptedType;
+        this.acceptedMediaType = MediaType.parse(acceptedType);
         this.route = route;
     }
 
     public boolean matches(HttpMethod httpMethod, String path) {
-        return (this.httpMethod == httpMethod) && PathMatcher.matches(this.path, path);
+        return matches(httpMethod, new RequestPath(path));
+    }
+
+    public boolean matches(HttpMethod httpMethod, RequestPath path) {
+        return (this.httpMethod == httpMethod) && pattern.matches(path);
     }
 
     @Override
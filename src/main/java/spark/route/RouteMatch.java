@@ -5,9 +5,17 @@ import spark.RouteImpl;
 
 public class RouteMatch extends Match {
     public final RouteImpl route;
+    public final RouteEntry entry;
 
     public RouteMatch(HttpMethod httpMethod, String acceptType, String matchedUri, String requestUri, RouteImpl route) {
         super(matchedUri, requestUri);
         this.route = route;
+        this.entry = null;
+    }
+
+    public RouteMatch(RouteEntry entry, RequestPath requestPath) {
+        super(entry.pattern, requestPath);
+        this.route = entry.route;
+        this.entry = entry;
     }
 }
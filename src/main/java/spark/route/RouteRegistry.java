@@ -16,25 +16,95 @@
  */
 package spark.route;
 
-import spark.utils.MimeParse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import spark.utils.NegotiationCache;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import static spark.utils.MimeParse.mimeBestMatch;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
- * Simple route matcher that is supposed to work exactly as Sinatra's
+ * Simple route matcher that is supposed to work exactly as Sinatra's.
+ * Routes are indexed per http method. Within a method, paths without params or splats are resolved with a
+ * single hash lookup and all other paths are looked up in a {@link PathTrie}, so lookups don't scan every
+ * registered route.
+ * <p>
+ * The index is an immutable table published through a volatile reference. Adding routes builds a new table
+ * (copying only what changes) and swaps it in, so lookups never lock and never see a half built table, even
+ * while routes are added by another thread. {@link #replaceRoutes(List)} swaps in a whole new set of routes
+ * at once.
  *
  * @author Per Wendel
  */
 public class RouteRegistry {
-    private final List<RouteEntry> routes = new ArrayList<>();
+    private static final CacheStats NO_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private volatile RouteTable table = new RouteTable(null);
+
+    private long matchCacheSize = 0;
+
+    private final NegotiationCache<RouteEntry> negotiationCache = new NegotiationCache<>();
+
+    public synchronized void addRoute(RouteEntry routeEntry) {
+        publish(table.plus(routeEntry, newMatchCache()));
+    }
+
+    /**
+     * Replaces all routes at once. The new table is built before it is swapped in, lookups see either the
+     * old or the new routes but never a mix of them.
+     *
+     * @param routeEntries the new routes, in order of precedence
+     */
+    public synchronized void replaceRoutes(List<RouteEntry> routeEntries) {
+        RouteTable replacement = new RouteTable(null);
+        for (RouteEntry routeEntry : routeEntries) {
+            replacement = replacement.plus(routeEntry, null);
+        }
+        publish(replacement.withMatchCache(newMatchCache()));
+    }
 
-    public void addRoute(RouteEntry routeEntry) {
-        routes.add(routeEntry);
+    /**
+     * @return the current routes in order of precedence, e.g. to build a changed set of routes for
+     * {@link #replaceRoutes(List)}
+     */
+    public List<RouteEntry> routes() {
+        return table.entries;
+    }
+
+    /**
+     * Enables caching of route lookups keyed by http method, request uri and accept header. Lookups that
+     * don't find any route are cached as well. The cache starts out empty whenever routes are added, replaced
+     * or cleared.
+     *
+     * @param maximumSize the maximum number of cached lookups
+     */
+    public synchronized void enableMatchCache(long maximumSize) {
+        matchCacheSize = maximumSize;
+        publish(table.withMatchCache(newMatchCache()));
+    }
+
+    /**
+     * Disables caching of route lookups
+     */
+    public synchronized void disableMatchCache() {
+        matchCacheSize = 0;
+        publish(table.withMatchCache(null));
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the route lookup cache since the routes last changed (all zero
+     * if the cache isn't enabled)
+     */
+    public CacheStats matchCacheStats() {
+        Cache<MatchKey, Optional<RouteMatch>> cache = table.matchCache;
+        return cache != null ? cache.stats() : NO_STATS;
     }
 
     /**
@@ -46,54 +116,201 @@ public class RouteRegistry {
      * @return the target
      */
     public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
-        List<RouteEntry> routeEntries = findTargetsForRequestedRoute(httpMethod, path);
-        RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
-        return entry != null ? new RouteMatch(httpMethod, acceptType, entry.path, path, entry.route) : null;
+        return findTargetForRequestedRoute(httpMethod, new RequestPath(path), acceptType);
+    }
+
+    /**
+     * finds target for a requested route
+     *
+     * @param httpMethod the http method
+     * @param path       the tokenized path
+     * @param acceptType the accept type
+     * @return the target
+     */
+    public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, RequestPath path, String acceptType) {
+        // Lookups stick to one table, its cache can't be filled with results from an earlier table
+        RouteTable table = this.table;
+        Cache<MatchKey, Optional<RouteMatch>> cache = table.matchCache;
+        if (cache == null) {
+            return findTarget(table, httpMethod, path, acceptType);
+        }
+
+        MatchKey key = new MatchKey(httpMethod, path.path(), acceptType);
+        Optional<RouteMatch> match = cache.getIfPresent(key);
+        if (match == null) {
+            match = Optional.ofNullable(findTarget(table, httpMethod, path, acceptType));
+            cache.put(key, match);
+        }
+        return match.orElse(null);
     }
 
-    public void clearRoutes() {
-        routes.clear();
+    /**
+     * @return the cache of accept type negotiations between routes matching the same path
+     */
+    public NegotiationCache<RouteEntry> negotiationCache() {
+        return negotiationCache;
+    }
+
+    public synchronized void clearRoutes() {
+        publish(new RouteTable(newMatchCache()));
     }
 
     //////////////////////////////////////////////////
     // PRIVATE METHODS
     //////////////////////////////////////////////////
 
-    private Map<String, RouteEntry> getAcceptedMimeTypes(List<RouteEntry> routes) {
-        Map<String, RouteEntry> acceptedTypes = new HashMap<>();
-        for (RouteEntry routeEntry : routes) {
-            if (!acceptedTypes.containsKey(routeEntry.acceptedType)) {
-                acceptedTypes.put(routeEntry.acceptedType, routeEntry);
+    private RouteMatch findTarget(RouteTable table, HttpMethod httpMethod, RequestPath path, String acceptType) {
+        List<RouteEntry> routeEntries = table.find(httpMethod, path);
+        RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
+        return entry != null ? new RouteMatch(entry, path) : null;
+    }
+
+    private void publish(RouteTable replacement) {
+        table = replacement;
+        // Only frees memory, negotiations depend on nothing but the candidates and the header
+        negotiationCache.invalidateAll();
+    }
+
+    private Cache<MatchKey, Optional<RouteMatch>> newMatchCache() {
+        if (matchCacheSize <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder().maximumSize(matchCacheSize).recordStats().build();
+    }
+
+    private RouteEntry findTargetWithGivenAcceptType(List<RouteEntry> routeMatches, String acceptType) {
+        if (routeMatches.isEmpty()) {
+            return null;
+        }
+        if (acceptType == null || acceptsAnyType(routeMatches)) {
+            // No negotiation needed, the first registered route wins
+            return routeMatches.get(0);
+        }
+        return negotiationCache.bestMatch(routeMatches, entry -> entry.acceptedMediaType, acceptType);
+    }
+
+    private static boolean acceptsAnyType(List<RouteEntry> routeMatches) {
+        for (int i = 0; i < routeMatches.size(); i++) {
+            if (!routeMatches.get(i).acceptedMediaType.isWildcard()) {
+                return false;
             }
         }
-        return acceptedTypes;
+        return true;
+    }
+
+    /**
+     * An immutable snapshot of all routes, indexed per http method, together with the lookup cache that
+     * belongs to it.
+     */
+    private static final class RouteTable {
+        private final List<RouteEntry> entries;
+        private final Map<HttpMethod, MethodRoutes> routes;
+        private final Cache<MatchKey, Optional<RouteMatch>> matchCache;
+
+        private RouteTable(Cache<MatchKey, Optional<RouteMatch>> matchCache) {
+            this(Collections.<RouteEntry>emptyList(), new EnumMap<>(HttpMethod.class), matchCache);
+        }
+
+        private RouteTable(List<RouteEntry> entries,
+                           Map<HttpMethod, MethodRoutes> routes,
+                           Cache<MatchKey, Optional<RouteMatch>> matchCache) {
+            this.entries = entries;
+            this.routes = routes;
+            this.matchCache = matchCache;
+        }
+
+        private RouteTable plus(RouteEntry entry, Cache<MatchKey, Optional<RouteMatch>> matchCache) {
+            List<RouteEntry> plusEntries = new ArrayList<>(entries.size() + 1);
+            plusEntries.addAll(entries);
+            plusEntries.add(entry);
+
+            Map<HttpMethod, MethodRoutes> plusRoutes = new EnumMap<>(routes);
+            MethodRoutes methodRoutes = routes.get(entry.httpMethod);
+            plusRoutes.put(entry.httpMethod, (methodRoutes != null ? methodRoutes : MethodRoutes.EMPTY).plus(entry));
+
+            return new RouteTable(Collections.unmodifiableList(plusEntries), plusRoutes, matchCache);
+        }
+
+        private RouteTable withMatchCache(Cache<MatchKey, Optional<RouteMatch>> matchCache) {
+            return new RouteTable(entries, routes, matchCache);
+        }
+
+        private List<RouteEntry> find(HttpMethod httpMethod, RequestPath path) {
+            MethodRoutes methodRoutes = routes.get(httpMethod);
+            return methodRoutes != null ? methodRoutes.find(path) : Collections.<RouteEntry>emptyList();
+        }
     }
 
-    private List<RouteEntry> findTargetsForRequestedRoute(HttpMethod httpMethod, String path) {
-        List<RouteEntry> matchSet = new ArrayList<>();
-        for (RouteEntry entry : routes) {
-            if (entry.matches(httpMethod, path)) {
-                matchSet.add(entry);
+    /**
+     * The routes of one http method. Every literal path registered is also a key of the exact match table,
+     * mapped to all routes matching it (including routes with params or splats) in registration order.
+     * That way a hit in the table gives the same result as the trie and precedence is kept.
+     */
+    private static final class MethodRoutes {
+        private static final MethodRoutes EMPTY = new MethodRoutes(new PathTrie<>(), new HashMap<>());
+
+        private final PathTrie<RouteEntry> trie;
+        private final Map<String, List<RouteEntry>> exact;
+
+        private MethodRoutes(PathTrie<RouteEntry> trie, Map<String, List<RouteEntry>> exact) {
+            this.trie = trie;
+            this.exact = exact;
+        }
+
+        private MethodRoutes plus(RouteEntry entry) {
+            PathTrie<RouteEntry> plusTrie = trie.plus(entry.pattern, entry);
+            Map<String, List<RouteEntry>> plusExact = new HashMap<>(exact);
+
+            for (Map.Entry<String, List<RouteEntry>> exactEntry : plusExact.entrySet()) {
+                if (entry.pattern.matches(new RequestPath(exactEntry.getKey()))) {
+                    List<RouteEntry> matching = new ArrayList<>(exactEntry.getValue());
+                    matching.add(entry);
+                    exactEntry.setValue(Collections.unmodifiableList(matching));
+                }
+            }
+            if (entry.pattern.isLiteral() && !plusExact.containsKey(entry.path)) {
+                plusExact.put(entry.path, Collections.unmodifiableList(plusTrie.find(entry.path)));
             }
+            return new MethodRoutes(plusTrie, plusExact);
+        }
+
+        private List<RouteEntry> find(RequestPath path) {
+            List<RouteEntry> matching = exact.get(path.path());
+            return matching != null ? matching : trie.find(path);
         }
-        return matchSet;
     }
 
-    private RouteEntry findTargetWithGivenAcceptType(List<RouteEntry> routeMatches, String acceptType) {
-        if (acceptType != null && routeMatches.size() > 0) {
-            Map<String, RouteEntry> acceptedMimeTypes = getAcceptedMimeTypes(routeMatches);
-            String bestMatch = mimeBestMatch(acceptedMimeTypes.keySet(), acceptType);
-            if (!MimeParse.NO_MIME_TYPE.equals(bestMatch)) {
-                return acceptedMimeTypes.get(bestMatch);
-            } else {
-                return null;
+    private static final class MatchKey {
+        private final HttpMethod httpMethod;
+        private final String path;
+        private final String acceptType;
+        private final int hash;
+
+        private MatchKey(HttpMethod httpMethod, String path, String acceptType) {
+            this.httpMethod = httpMethod;
+            this.path = path;
+            this.acceptType = acceptType;
+            this.hash = 31 * (31 * httpMethod.hashCode() + path.hashCode()) + Objects.hashCode(acceptType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-        } else {
-            if (routeMatches.size() > 0) {
-                return routeMatches.get(0);
+            if (!(o instanceof MatchKey)) {
+                return false;
             }
+            MatchKey other = (MatchKey) o;
+            return httpMethod == other.httpMethod
+                    && path.equals(other.path)
+                    && Objects.equals(acceptType, other.acceptType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        return null;
     }
 
 }
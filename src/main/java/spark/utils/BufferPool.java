@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of byte arrays of {@link #BUFFER_SIZE} bytes, used to copy streams without allocating a new
+ * buffer for every request. Buffers beyond the bound are left to the garbage collector.
+ */
+public final class BufferPool {
+
+    /**
+     * The size of the pooled buffers
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int MAXIMUM_POOLED = 256;
+
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Takes a buffer from the pool, or creates one if the pool is empty
+     *
+     * @return a buffer of {@link #BUFFER_SIZE} bytes
+     */
+    public static byte[] acquire() {
+        byte[] buffer = POOL.poll();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        POOLED.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     *
+     * @param buffer a buffer taken with {@link #acquire()}
+     */
+    public static void release(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE && POOLED.incrementAndGet() <= MAXIMUM_POOLED) {
+            POOL.offer(buffer);
+        } else if (buffer.length == BUFFER_SIZE) {
+            POOLED.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of {@link Deflater}s, so that compressing a response doesn't allocate a new native zlib stream
+ * every time. Deflaters producing raw deflate data, as wrapped by gzip, and zlib data are pooled separately.
+ * Deflaters beyond the bound are ended.
+ */
+public final class DeflaterPool {
+
+    private static final int MAXIMUM_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<Deflater> RAW = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Deflater> ZLIB = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger RAW_POOLED = new AtomicInteger();
+    private static final AtomicInteger ZLIB_POOLED = new AtomicInteger();
+
+    private DeflaterPool() {
+    }
+
+    /**
+     * Takes a deflater from the pool, or creates one if the pool is empty
+     *
+     * @param level the compression level
+     * @param raw   true for raw deflate data, as wrapped by gzip, false for zlib data
+     * @return a deflater at the start of a new stream
+     */
+    public static Deflater acquire(int level, boolean raw) {
+        Deflater deflater = (raw ? RAW : ZLIB).poll();
+        if (deflater == null) {
+            return new Deflater(level, raw);
+        }
+        (raw ? RAW_POOLED : ZLIB_POOLED).decrementAndGet();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * Returns a deflater to the pool. The deflater must not be used afterwards.
+     *
+     * @param deflater a deflater taken with {@link #acquire(int, boolean)}
+     * @param raw      the kind it was taken as
+     */
+    public static void release(Deflater deflater, boolean raw) {
+        AtomicInteger pooled = raw ? RAW_POOLED : ZLIB_POOLED;
+        if (pooled.incrementAndGet() <= MAXIMUM_POOLED) {
+            deflater.reset();
+            (raw ? RAW : ZLIB).offer(deflater);
+        } else {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, parsed media type such as 'application/json' or 'text/html;level=1'. Accept types of routes
+ * and interceptors are parsed into media types once when they are registered so that content negotiation
+ * only has to look at the Accept header of the request.
+ */
+public final class MediaType {
+
+    private static final String WILDCARD = "*";
+
+    private final String value;
+    private final String type;
+    private final String subType;
+    private final String[] paramNames;
+    private final String[] paramValues;
+
+    private MediaType(String value, String type, String subType, String[] paramNames, String[] paramValues) {
+        this.value = value;
+        this.type = type;
+        this.subType = subType;
+        this.paramNames = paramNames;
+        this.paramValues = paramValues;
+    }
+
+    /**
+     * Parses a media type. A null value or a single '*' is read as '*&#47;*'. Quality parameters are ignored.
+     *
+     * @param mediaType the media type, e.g. 'application/json'
+     * @return the parsed media type
+     */
+    public static MediaType parse(String mediaType) {
+        if (mediaType == null) {
+            return new MediaType("*/*", WILDCARD, WILDCARD, new String[0], new String[0]);
+        }
+
+        String[] parts = mediaType.split(";");
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] param = parts[i].split("=");
+            if (param.length == 2 && !"q".equals(param[0].trim())) {
+                names.add(param[0].trim());
+                values.add(param[1].trim());
+            }
+        }
+
+        String fullType = parts.length > 0 ? parts[0].trim() : "";
+        if (fullType.equals(WILDCARD)) {
+            fullType = "*/*";
+        }
+        int slash = fullType.indexOf('/');
+        String type = slash < 0 ? fullType : fullType.substring(0, slash).trim();
+        String subType = slash < 0 ? "" : fullType.substring(slash + 1).trim();
+
+        return new MediaType(mediaType,
+                             type,
+                             subType,
+                             names.toArray(new String[names.size()]),
+                             values.toArray(new String[values.size()]));
+    }
+
+    /**
+     * @return the media type as it was registered
+     */
+    public String value() {
+        return value;
+    }
+
+    /**
+     * @return the type, e.g. 'application'
+     */
+    public String type() {
+        return type;
+    }
+
+    /**
+     * @return the sub type, e.g. 'json'
+     */
+    public String subType() {
+        return subType;
+    }
+
+    /**
+     * @return the number of parameters, not counting the quality parameter
+     */
+    public int paramCount() {
+        return paramNames.length;
+    }
+
+    /**
+     * @param index the parameter index
+     * @return the parameter name
+     */
+    public String paramName(int index) {
+        return paramNames[index];
+    }
+
+    /**
+     * @param index the parameter index
+     * @return the parameter value
+     */
+    public String paramValue(int index) {
+        return paramValues[index];
+    }
+
+    /**
+     * @return true if this is '*&#47;*' and therefore accepts anything
+     */
+    public boolean isWildcard() {
+        return WILDCARD.equals(type) && WILDCARD.equals(subType);
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+}
@@ -1,14 +1,14 @@
 package spark.utils;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Function;
 
 /**
- * MIME-Type Parser
+ * MIME-Type Parser.
+ * The supported types are parsed into {@link MediaType}s up front, the Accept header is scanned in place and
+ * no objects are created while negotiating.
  */
 public class MimeParse {
 
@@ -17,186 +17,241 @@ public class MimeParse {
      */
     public static final String NO_MIME_TYPE = "";
 
+    private static final String WILDCARD = "*";
+
     /**
-     * Parse results container
+     * Finds the candidate whose media type best matches the given Accept header. Candidates are ranked by
+     * how specifically a media range of the header matches their type (type, sub type and parameters) and
+     * then by the quality of that media range. If several candidates rank the same, the first one wins.
+     *
+     * @param candidates the candidates
+     * @param mediaType  gets the supported media type of a candidate
+     * @param header     the Accept header
+     * @param <T>        the candidate type
+     * @return the best candidate, or null if no candidate is acceptable
      */
-    private static class ParseResults {
-        String type;
+    public static <T> T bestMatch(List<T> candidates, Function<T, MediaType> mediaType, String header) {
+        T best = null;
+        int bestFitness = Integer.MIN_VALUE;
+        float bestQuality = 0;
 
-        String subType;
+        for (int i = 0; i < candidates.size(); i++) {
+            T candidate = candidates.get(i);
+            MediaType target = mediaType.apply(candidate);
 
-        // !a dictionary of all the parameters for the media range
-        Map<String, String> params;
+            int fitness = -1;
+            float quality = 0;
+            int length = header.length();
+            for (int start = 0; start <= length; ) {
+                int end = header.indexOf(',', start);
+                if (end < 0) {
+                    end = length;
+                }
+                int rangeFitness = fitness(target, header, start, end);
+                if (rangeFitness > fitness) {
+                    fitness = rangeFitness;
+                    quality = quality(header, start, end);
+                }
+                start = end + 1;
+            }
 
-        @Override
-        public String toString() {
-            StringBuilder s = new StringBuilder("('" + type + "', '" + subType + "', {");
-            for (String k : params.keySet()) {
-                s.append("'").append(k).append("':'").append(params.get(k)).append("',");
+            if (fitness > bestFitness || (fitness == bestFitness && quality > bestQuality)) {
+                best = candidate;
+                bestFitness = fitness;
+                bestQuality = quality;
             }
-            return s.append("})").toString();
         }
+        return Float.compare(bestQuality, 0) != 0 ? best : null;
     }
 
     /**
-     * Carves up a mime-type and returns a ParseResults object
-     * For example, the media range 'application/xhtml;q=0.5' would get parsed
-     * into:
-     * ('application', 'xhtml', {'q', '0.5'})
+     * Checks if any of the supported media types is acceptable according to the Accept header
+     *
+     * @param supported the supported media types
+     * @param header    the Accept header
+     * @return true if acceptable
      */
-    private static ParseResults parseMimeType(String mimeType) {
-        String[] parts = mimeType.split(";");
-        ParseResults results = new ParseResults();
-        results.params = new HashMap<>();
-
-        for (int i = 1; i < parts.length; ++i) {
-            String p = parts[i];
-            String[] subParts = p.split("=");
-            if (subParts.length == 2) {
-                results.params.put(subParts[0].trim(), subParts[1].trim());
-            }
-        }
-        String fullType = parts[0].trim();
-
-        // Java URLConnection class sends an Accept header that includes a
-        // single "*" - Turn it into a legal wildcard.
-        if (fullType.equals("*")) {
-            fullType = "*/*";
-        }
-        String[] types = fullType.split("/");
-        results.type = types[0].trim();
-        results.subType = types[1].trim();
-        return results;
+    public static boolean matches(List<MediaType> supported, String header) {
+        return bestMatch(supported, Function.identity(), header) != null;
     }
 
     /**
-     * Carves up a media range and returns a ParseResults.
-     * For example, the media range 'application/*;q=0.5' would get parsed into:
-     * ('application', '*', {'q', '0.5'})
-     * In addition this function also guarantees that there is a value for 'q'
-     * in the params dictionary, filling it in with a proper default if
-     * necessary.
+     * Finds best match
      *
-     * @param range
+     * @param supported the supported types
+     * @param header    the header
+     * @return the best match
      */
-    private static ParseResults parseMediaRange(String range) {
-        ParseResults results = parseMimeType(range);
-        String q = results.params.get("q");
-        float f = toFloat(q, 1);
-        if (isBlank(q) || f < 0 || f > 1) {
-            results.params.put("q", "1");
+    public static String mimeBestMatch(Collection<String> supported, String header) {
+        List<MediaType> mediaTypes = new ArrayList<>(supported.size());
+        for (String s : supported) {
+            mediaTypes.add(MediaType.parse(s));
         }
-        return results;
+        MediaType best = bestMatch(mediaTypes, Function.identity(), header);
+        return best != null ? best.value() : NO_MIME_TYPE;
+    }
+
+    public static boolean mimeMatches(Collection<String> supported, String header) {
+        return !NO_MIME_TYPE.equals(mimeBestMatch(supported, header));
     }
 
     /**
-     * Structure for holding a fitness/quality combo
+     * Returns how well the media range header[start, end) matches the target: 100 if the types are equal,
+     * plus 10 if the sub types are equal, plus 1 if a parameter matches. Returns -1 if the range doesn't
+     * match at all.
      */
-    private static class FitnessAndQuality implements Comparable<FitnessAndQuality> {
-        int fitness;
+    private static int fitness(MediaType target, String header, int start, int end) {
+        int typeEnd = indexOf(header, ';', start, end);
+        int typeStart = skipWhitespace(header, start, typeEnd);
+        typeEnd = trimEnd(header, typeStart, typeEnd);
 
-        float quality;
+        int slash = indexOf(header, '/', typeStart, typeEnd);
+        int subTypeStart;
+        int subTypeEnd;
+        int rangeTypeEnd;
+        if (slash == typeEnd) {
+            // Java URLConnection class sends an Accept header that includes a single "*"
+            if (!regionEquals(header, typeStart, typeEnd, WILDCARD)) {
+                return -1;
+            }
+            rangeTypeEnd = typeEnd;
+            subTypeStart = typeStart;
+            subTypeEnd = typeEnd;
+        } else {
+            rangeTypeEnd = trimEnd(header, typeStart, slash);
+            subTypeStart = skipWhitespace(header, slash + 1, typeEnd);
+            subTypeEnd = typeEnd;
+        }
 
-        String mimeType; // optionally used
+        boolean typeEquals = regionEquals(header, typeStart, rangeTypeEnd, target.type());
+        boolean subTypeEquals = regionEquals(header, subTypeStart, subTypeEnd, target.subType());
 
-        private FitnessAndQuality(int fitness, float quality) {
-            this.fitness = fitness;
-            this.quality = quality;
+        if (!(typeEquals
+                || regionEquals(header, typeStart, rangeTypeEnd, WILDCARD)
+                || WILDCARD.equals(target.type()))) {
+            return -1;
+        }
+        if (!(subTypeEquals
+                || regionEquals(header, subTypeStart, subTypeEnd, WILDCARD)
+                || WILDCARD.equals(target.subType()))) {
+            return -1;
         }
 
-        public int compareTo(FitnessAndQuality o) {
-            if (fitness == o.fitness) {
-                if (quality == o.quality) {
-                    return 0;
-                } else {
-                    return quality < o.quality ? -1 : 1;
-                }
-            } else {
-                return fitness < o.fitness ? -1 : 1;
+        int fitness = typeEquals ? 100 : 0;
+        fitness += subTypeEquals ? 10 : 0;
+        for (int i = 0; i < target.paramCount(); i++) {
+            if (hasParam(header, start, end, target.paramName(i), target.paramValue(i))) {
+                fitness += 1;
+                break;
             }
         }
+        return fitness;
     }
 
     /**
-     * Find the best match for a given mimeType against a list of media_ranges
-     * that have already been parsed by MimeParse.parseMediaRange(). Returns a
-     * tuple of the fitness value and the value of the 'q' quality parameter of
-     * the best match, or (-1, 0) if no match was found. Just as for
-     * quality_parsed(), 'parsed_ranges' must be a list of parsed media ranges.
-     *
-     * @param mimeType
-     * @param parsedRanges
+     * Returns the 'q' parameter of the media range header[start, end). Defaults to 1 if it's missing or out
+     * of range, and is 0 if it can't be parsed.
      */
-    private static FitnessAndQuality fitnessAndQualityParsed(String mimeType, Collection<ParseResults> parsedRanges) {
-        int bestFitness = -1;
-        float bestFitQ = 0;
-        ParseResults target = parseMediaRange(mimeType);
-
-        for (ParseResults range : parsedRanges) {
-            if ((target.type.equals(range.type) || range.type.equals("*") || target.type.equals("*"))
-                    && (target.subType.equals(range.subType) || range.subType.equals("*")
-                    || target.subType.equals("*"))) {
-                for (String k : target.params.keySet()) {
-                    int paramMatches = 0;
-                    if (!k.equals("q") && range.params.containsKey(k)
-                            && target.params.get(k).equals(range.params.get(k))) {
-                        paramMatches++;
-                    }
-                    int fitness = (range.type.equals(target.type)) ? 100 : 0;
-                    fitness += (range.subType.equals(target.subType)) ? 10 : 0;
-                    fitness += paramMatches;
-                    if (fitness > bestFitness) {
-                        bestFitness = fitness;
-                        bestFitQ = toFloat(range.params.get("q"), 0);
-                    }
+    private static float quality(String header, int start, int end) {
+        float quality = 1;
+        for (int param = indexOf(header, ';', start, end); param < end; ) {
+            int paramEnd = indexOf(header, ';', param + 1, end);
+            int equals = indexOf(header, '=', param + 1, paramEnd);
+            if (equals < paramEnd && indexOf(header, '=', equals + 1, paramEnd) == paramEnd) {
+                int nameStart = skipWhitespace(header, param + 1, equals);
+                int nameEnd = trimEnd(header, nameStart, equals);
+                if (regionEquals(header, nameStart, nameEnd, "q")) {
+                    int valueStart = skipWhitespace(header, equals + 1, paramEnd);
+                    int valueEnd = trimEnd(header, valueStart, paramEnd);
+                    quality = parseQuality(header, valueStart, valueEnd);
                 }
             }
+            param = paramEnd;
         }
-        return new FitnessAndQuality(bestFitness, bestFitQ);
+        return quality;
+    }
+
+    private static float parseQuality(String header, int start, int end) {
+        if (start == end) {
+            return 1;
+        }
+        float value = parseDecimal(header, start, end);
+        if (Float.isNaN(value)) {
+            try {
+                value = Float.parseFloat(header.substring(start, end));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return value < 0 || value > 1 ? 1 : value;
     }
 
     /**
-     * Finds best match
-     *
-     * @param supported the supported types
-     * @param header    the header
-     * @return the best match
+     * Parses plain decimals such as '1', '0.5' or '0.125' without creating a string. Returns NaN for
+     * anything else.
      */
-    public static String mimeBestMatch(Collection<String> supported, String header) {
-        List<ParseResults> parseResults = new LinkedList<>();
-        List<FitnessAndQuality> weightedMatches = new LinkedList<>();
-        for (String r : header.split(",")) {
-            parseResults.add(parseMediaRange(r));
+    private static float parseDecimal(String header, int start, int end) {
+        long digits = 0;
+        long scale = 1;
+        boolean fraction = false;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = header.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c >= '0' && c <= '9' && count < 9) {
+                digits = digits * 10 + (c - '0');
+                scale = fraction ? scale * 10 : scale;
+                count++;
+            } else {
+                return Float.NaN;
+            }
         }
+        return count == 0 ? Float.NaN : (float) ((double) digits / scale);
+    }
 
-        for (String s : supported) {
-            FitnessAndQuality fitnessAndQuality = fitnessAndQualityParsed(s, parseResults);
-            fitnessAndQuality.mimeType = s;
-            weightedMatches.add(fitnessAndQuality);
+    private static boolean hasParam(String header, int start, int end, String name, String value) {
+        for (int param = indexOf(header, ';', start, end); param < end; ) {
+            int paramEnd = indexOf(header, ';', param + 1, end);
+            int equals = indexOf(header, '=', param + 1, paramEnd);
+            if (equals < paramEnd) {
+                int nameStart = skipWhitespace(header, param + 1, equals);
+                int valueStart = skipWhitespace(header, equals + 1, paramEnd);
+                if (regionEquals(header, nameStart, trimEnd(header, nameStart, equals), name)
+                        && regionEquals(header, valueStart, trimEnd(header, valueStart, paramEnd), value)) {
+                    return true;
+                }
+            }
+            param = paramEnd;
         }
-        Collections.sort(weightedMatches);
-
-        FitnessAndQuality lastOne = weightedMatches.get(weightedMatches.size() - 1);
-        return Float.compare(lastOne.quality, 0) != 0 ? lastOne.mimeType : NO_MIME_TYPE;
+        return false;
     }
 
-    public static boolean mimeMatches(Collection<String> supported, String header) {
-        return !NO_MIME_TYPE.equals(mimeBestMatch(supported, header));
+    private static int indexOf(String s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
     }
 
-    private static boolean isBlank(String s) {
-        return s == null || "".equals(s.trim());
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
     }
 
-    private static float toFloat(final String str, final float defaultValue) {
-        if (str == null) {
-            return defaultValue;
-        }
-        try {
-            return Float.parseFloat(str);
-        } catch (final NumberFormatException nfe) {
-            return defaultValue;
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
         }
+        return end;
+    }
+
+    private static boolean regionEquals(String s, int start, int end, String value) {
+        return end - start == value.length() && s.regionMatches(start, value, 0, end - start);
     }
 
     private MimeParse() {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread safe cache of content negotiation results, keyed by the candidates and the Accept header.
+ * Clients only send a handful of distinct Accept headers, so most negotiations are answered from the cache.
+ * The size cap keeps clients sending random headers from growing it without bounds.
+ *
+ * @param <T> the candidate type
+ */
+public class NegotiationCache<T> {
+
+    /**
+     * The default maximum number of cached negotiations
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private static final CacheStats NO_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private volatile Cache<Key<T>, Optional<T>> cache;
+
+    public NegotiationCache() {
+        maximumSize(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Sets the maximum number of cached negotiations, 0 disables the cache. Empties the cache.
+     *
+     * @param maximumSize the maximum size
+     */
+    public void maximumSize(long maximumSize) {
+        if (maximumSize > 0) {
+            cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Finds the best candidate for the Accept header, see {@link MimeParse#bestMatch(List, Function, String)}.
+     * The candidate list is compared by its elements, so it must not be modified afterwards.
+     *
+     * @param candidates the candidates
+     * @param mediaType  gets the supported media type of a candidate
+     * @param header     the Accept header
+     * @return the best candidate, or null if no candidate is acceptable
+     */
+    public T bestMatch(List<T> candidates, Function<T, MediaType> mediaType, String header) {
+        Cache<Key<T>, Optional<T>> cache = this.cache;
+        if (cache == null) {
+            return MimeParse.bestMatch(candidates, mediaType, header);
+        }
+
+        Key<T> key = new Key<>(candidates, header);
+        Optional<T> match = cache.getIfPresent(key);
+        if (match == null) {
+            match = Optional.ofNullable(MimeParse.bestMatch(candidates, mediaType, header));
+            cache.put(key, match);
+        }
+        return match.orElse(null);
+    }
+
+    /**
+     * Empties the cache, to be called when the candidates it may hold are removed
+     */
+    public void invalidateAll() {
+        Cache<Key<T>, Optional<T>> cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts (all zero if the cache is disabled)
+     */
+    public CacheStats stats() {
+        Cache<Key<T>, Optional<T>> cache = this.cache;
+        return cache != null ? cache.stats() : NO_STATS;
+    }
+
+    private static final class Key<T> {
+        private final List<T> candidates;
+        private final String header;
+        private final int hash;
+
+        private Key(List<T> candidates, String header) {
+            this.candidates = candidates;
+            this.header = header;
+            this.hash = 31 * candidates.hashCode() + header.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key<?> other = (Key<?>) o;
+            return hash == other.hash && header.equals(other.header) && candidates.equals(other.candidates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes percent-encoded parts of request uris as UTF-8, without the platform charset
+ * {@link java.net.URLDecoder} falls back on. Parts without escapes are returned as they are.
+ */
+public final class PercentDecoder {
+
+    private PercentDecoder() {
+    }
+
+    /**
+     * Decodes a part of a path, such as a route param. '+' is kept as it is.
+     *
+     * @param s     the encoded string
+     * @param start the start of the part
+     * @param end   the end of the part
+     * @return the decoded part
+     * @throws IllegalArgumentException if an escape is malformed or the escaped bytes are not valid UTF-8
+     */
+    public static String decodePath(String s, int start, int end) {
+        return decode(s, start, end, false);
+    }
+
+    /**
+     * Decodes a name or value of a query string. '+' stands for a space, malformed escapes are kept as they are
+     * and invalid UTF-8 is replaced.
+     *
+     * @param s     the encoded string
+     * @param start the start of the part
+     * @param end   the end of the part
+     * @return the decoded part
+     */
+    public static String decodeQuery(String s, int start, int end) {
+        return decode(s, start, end, true);
+    }
+
+    /**
+     * @param s     the string
+     * @param start the start of the part
+     * @param end   the end of the part
+     * @param query true if '+' stands for a space
+     * @return true if the part has anything to decode
+     */
+    public static boolean isEncoded(String s, int start, int end, boolean query) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '%' || (query && c == '+')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String decode(String s, int start, int end, boolean query) {
+        if (!isEncoded(s, start, end, query)) {
+            return s.substring(start, end);
+        }
+        StringBuilder decoded = new StringBuilder(end - start);
+        byte[] bytes = null;
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                // Collects a run of escapes, a character can span several of them
+                int count = 0;
+                while (i < end && s.charAt(i) == '%') {
+                    int high = i + 2 < end ? Character.digit(s.charAt(i + 1), 16) : -1;
+                    int low = i + 2 < end ? Character.digit(s.charAt(i + 2), 16) : -1;
+                    if (high < 0 || low < 0) {
+                        if (!query) {
+                            throw new IllegalArgumentException("Malformed escape at " + i + " in " + s);
+                        }
+                        break;
+                    }
+                    if (bytes == null) {
+                        bytes = new byte[(end - i) / 3];
+                    }
+                    bytes[count++] = (byte) (high << 4 | low);
+                    i += 3;
+                }
+                if (count > 0) {
+                    decoded.append(utf8(bytes, count, query));
+                    continue;
+                }
+            }
+            decoded.append(query && c == '+' ? ' ' : c);
+            i++;
+        }
+        return decoded.toString();
+    }
+
+    private static CharSequence utf8(byte[] bytes, int count, boolean lenient) {
+        CodingErrorAction action = lenient ? CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action);
+        try {
+            return decoder.decode(ByteBuffer.wrap(bytes, 0, count));
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Escaped bytes are not valid UTF-8", e);
+        }
+    }
+
+}
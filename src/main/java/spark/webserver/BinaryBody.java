@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+
+import spark.compression.CompressingOutputStream;
+import spark.utils.BufferPool;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Writes route results that are not rendered to text: byte[], ByteBuffer, InputStream, Path and
+ * Consumer&lt;OutputStream&gt;. Each is written to the servlet output stream without going through a String,
+ * with a Content-Length whenever the size is known up front, or compressed if the route compresses. Files are
+ * handed to Jetty as a channel, so their bytes never pass through the heap, and are never compressed.
+ */
+final class BinaryBody {
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private static final MimeTypes MIME_TYPES = new MimeTypes();
+
+    private BinaryBody() {
+    }
+
+    /**
+     * @param result a route result
+     * @return true if the result is written as it is rather than rendered
+     */
+    static boolean isBinary(Object result) {
+        return result instanceof byte[]
+                || result instanceof ByteBuffer
+                || result instanceof InputStream
+                || result instanceof Path
+                || result instanceof Consumer;
+    }
+
+    /**
+     * Writes a binary result as the response body
+     *
+     * @param result      the result, see {@link #isBinary(Object)}
+     * @param response    the response
+     * @param compression the compressing stream of the route, null if the route doesn't compress
+     * @throws IOException if the result can't be read or written
+     */
+    @SuppressWarnings("unchecked")
+    static void write(Object result, HttpServletResponse response, CompressingOutputStream compression)
+            throws IOException {
+        if (result instanceof Path) {
+            write((Path) result, response);
+            return;
+        }
+        if (response.getContentType() == null) {
+            response.setContentType(DEFAULT_CONTENT_TYPE);
+        }
+        if (result instanceof byte[]) {
+            byte[] bytes = (byte[]) result;
+            output(response, compression, bytes.length).write(bytes);
+        } else if (result instanceof ByteBuffer) {
+            ByteBuffer body = ((ByteBuffer) result).duplicate();
+            write(body, output(response, compression, body.remaining()));
+        } else if (result instanceof InputStream) {
+            try (InputStream in = (InputStream) result) {
+                copy(in, compression != null ? compression : response.getOutputStream());
+            }
+        } else {
+            ((Consumer<OutputStream>) result).accept(compression != null ? compression : response.getOutputStream());
+        }
+        if (compression != null) {
+            compression.finish();
+        }
+    }
+
+    /**
+     * @return the stream to write a body of a known length to, the compressing stream if it compresses the body,
+     * otherwise the servlet output stream with the Content-Length set
+     */
+    private static OutputStream output(HttpServletResponse response, CompressingOutputStream compression,
+                                       long length) throws IOException {
+        if (compression != null && compression.compresses(length)) {
+            return compression;
+        }
+        contentLength(response, length);
+        return response.getOutputStream();
+    }
+
+    private static void write(ByteBuffer body, OutputStream out) throws IOException {
+        if (body.hasArray()) {
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            return;
+        }
+        // Direct or read only buffers are copied out through a pooled array
+        byte[] chunk = BufferPool.acquire();
+        try {
+            while (body.hasRemaining()) {
+                int length = Math.min(chunk.length, body.remaining());
+                body.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        } finally {
+            BufferPool.release(chunk);
+        }
+    }
+
+    private static void write(Path path, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (response.getContentType() == null) {
+                String contentType = MIME_TYPES.getMimeByExtension(path.getFileName().toString());
+                response.setContentType(contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+            }
+            if (!response.containsHeader(LAST_MODIFIED)) {
+                response.setDateHeader(LAST_MODIFIED, Files.getLastModifiedTime(path).toMillis());
+            }
+            long size = channel.size();
+            contentLength(response, size);
+
+            ServletOutputStream out = response.getOutputStream();
+            if (out instanceof HttpOutput) {
+                // Jetty reads the channel into its own direct buffers and completes the response
+                ((HttpOutput) out).sendContent(channel);
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < size) {
+                long count = channel.transferTo(position, size - position, target);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] chunk = BufferPool.acquire();
+        try {
+            int count;
+            while ((count = in.read(chunk)) >= 0) {
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            BufferPool.release(chunk);
+        }
+    }
+
+    private static void contentLength(HttpServletResponse response, long length) {
+        if (length <= Integer.MAX_VALUE) {
+            response.setContentLength((int) length);
+        } else {
+            response.setHeader("Content-Length", Long.toString(length));
+        }
+    }
+
+}
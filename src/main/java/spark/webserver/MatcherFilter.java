@@ -23,11 +23,15 @@ import spark.HaltException;
 import spark.Request;
 import spark.RequestResponseFactory;
 import spark.Response;
+import spark.compression.CompressingOutputStream;
 import spark.exception.ExceptionHandlerImpl;
 import spark.exception.ExceptionMapper;
+import spark.interceptor.InterceptorChain;
 import spark.interceptor.InterceptorMatch;
 import spark.interceptor.InterceptorRegistry;
 import spark.route.HttpMethod;
+import spark.route.RequestPath;
+import spark.route.RouteEntry;
 import spark.route.RouteMatch;
 import spark.route.RouteRegistry;
 
@@ -40,8 +44,8 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.List;
 
 import static java.text.MessageFormat.format;
 import static org.apache.commons.lang3.StringUtils.defaultString;
@@ -107,17 +111,56 @@ public class MatcherFilter implements Filter {
 
         HttpMethod httpMethod = HttpMethod.valueOf(method);
 
-        RequestWrapper req = new RequestWrapper();
-        ResponseWrapper res = new ResponseWrapper();
+        // One request and response for the whole exchange, only the matched route or filter changes per stage
+        Request req = RequestResponseFactory.create(httpRequest);
+        Response res = RequestResponseFactory.create(httpResponse);
 
-        RequestContext rqCtx = new RequestContext(httpMethod, requestUri, acceptType, req, res, httpRequest, httpResponse);
+        RequestContext rqCtx = new RequestContext(httpMethod, new RequestPath(requestUri), acceptType,
+                                                  req, res, httpRequest, httpResponse);
 
         try {
-            executeInterceptors(before, rqCtx);
+            handle(rqCtx);
+            writeResult(rqCtx, chain);
+        } finally {
+            if (rqCtx.compression != null) {
+                // Whether or not the body could be finished, streamed or rendered
+                rqCtx.compression.release();
+            }
+            // Only once the body is written, it may be a spooled upload of the request
+            RequestResponseFactory.release(req);
+        }
+    }
+
+    private void handle(RequestContext rqCtx) {
+        HttpServletRequest httpRequest = rqCtx.httpReq;
+        HttpServletResponse httpResponse = rqCtx.httpRes;
+        Request req = rqCtx.request;
+        Response res = rqCtx.response;
+
+        try {
+            // The route is found first, its interceptor chains are resolved ahead of time
+            RouteMatch match = routeRegistry.findTargetForRequestedRoute(rqCtx.httpMethod, rqCtx.requestPath,
+                                                                          rqCtx.acceptType);
+
+            if (match != null && match.route != null) {
+                // Fails before any filter runs if the client announced a larger body than the route accepts
+                RequestResponseFactory.maxBodySize(req, match.route.maxBodySize());
+                RequestResponseFactory.bodyReader(req, match.route.bodyReader());
+                if (match.route.responseBufferSize() > 0) {
+                    httpResponse.setBufferSize(match.route.responseBufferSize());
+                }
+                if (match.route.compression() != null && match.route.compression().enabled()) {
+                    rqCtx.compression = new CompressingOutputStream(httpResponse, match.route.compression(),
+                                                                    httpRequest.getHeader("Accept-Encoding"));
+                    RequestResponseFactory.bodyStream(res, rqCtx.compression);
+                }
+            }
+
+            executeInterceptors(before, match, rqCtx);
 
-            executeRouteHandlerAndRenderResult(rqCtx);
+            executeRouteHandlerAndRenderResult(match, rqCtx);
 
-            executeInterceptors(after, rqCtx);
+            executeInterceptors(after, match, rqCtx);
 
         } catch (HaltException e) {
 
@@ -128,15 +171,32 @@ public class MatcherFilter implements Filter {
             handleException(e, rqCtx);
 
         }
+    }
+
+    private void writeResult(RequestContext rqCtx, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = rqCtx.httpReq;
+        HttpServletResponse httpResponse = rqCtx.httpRes;
+        Response res = rqCtx.response;
+
+        if (RequestResponseFactory.isStreamed(res)) {
+            // The route wrote the body itself, whatever else was set is dropped
+            rqCtx.discardBinaryBody();
+            RequestResponseFactory.finishStream(res);
+            if (rqCtx.compression != null) {
+                rqCtx.compression.finish();
+            }
+            return;
+        }
 
         String bodyContent = rqCtx.bodyContent;
+        Object binaryBody = rqCtx.binaryBody;
 
         // If redirected and content is null set to empty string to not throw NotConsumedException
-        if (bodyContent == null && res.isRedirected()) {
+        if (bodyContent == null && binaryBody == null && RequestResponseFactory.isRedirected(res)) {
             bodyContent = StringUtils.EMPTY;
         }
 
-        boolean consumed = bodyContent != null;
+        boolean consumed = bodyContent != null || binaryBody != null;
 
         if (!consumed && hasOtherHandlers) {
             throw new NotConsumedException();
@@ -144,16 +204,19 @@ public class MatcherFilter implements Filter {
 
         if (!consumed && !isServletContext) {
             httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            bodyContent = format(NOT_FOUND, requestUri);
+            bodyContent = format(NOT_FOUND, httpRequest.getRequestURI());
             consumed = true;
         }
 
         if (consumed) {
-            if (!httpResponse.isCommitted()) {
-                if (httpResponse.getContentType() == null) {
-                    httpResponse.setContentType("text/html; charset=utf-8");
+            if (binaryBody != null) {
+                if (!httpResponse.isCommitted()) {
+                    BinaryBody.write(binaryBody, httpResponse, rqCtx.compression);
+                } else {
+                    rqCtx.discardBinaryBody();
                 }
-                httpResponse.getOutputStream().write(bodyContent.getBytes("utf-8"));
+            } else if (!httpResponse.isCommitted()) {
+                TextBody.write(bodyContent, httpResponse, rqCtx.compression);
             }
         } else {
             if (chain != null) {
@@ -162,43 +225,55 @@ public class MatcherFilter implements Filter {
         }
     }
 
-    private void executeInterceptors(InterceptionPhase phase, RequestContext rqCtx) throws Exception {
+    private void executeInterceptors(InterceptionPhase phase, RouteMatch routeMatch, RequestContext rqCtx) throws Exception {
         // Finds interceptor to execute on the phase
-        List<InterceptorMatch> matches = interceptorRegistry.findInterceptors(phase, rqCtx.httpMethod, rqCtx.requestUri, rqCtx.acceptType);
+        RouteEntry route = routeMatch != null ? routeMatch.entry : null;
+        InterceptorChain chain = interceptorRegistry.findChain(phase, route, rqCtx.httpMethod, rqCtx.requestPath);
 
-        for (InterceptorMatch match : matches) {
-            Request request = RequestResponseFactory.create(match, rqCtx.httpReq);
-            Response response = RequestResponseFactory.create(rqCtx.httpRes);
-
-            rqCtx.reqWrapper.setDelegate(request);
-            rqCtx.resWrapper.setDelegate(response);
+        for (int i = 0; i < chain.size(); i++) {
+            InterceptorMatch match = chain.match(i, rqCtx.requestPath, rqCtx.acceptType);
+            if (match == null) {
+                continue;
+            }
+            RequestResponseFactory.changeMatch(rqCtx.request, match);
 
-            match.interceptor.handle(rqCtx.reqWrapper, rqCtx.resWrapper);
+            match.interceptor.handle(rqCtx.request, rqCtx.response);
 
             rqCtx.setBodyContentFromResponse();
         }
     }
 
-    private void executeRouteHandlerAndRenderResult(RequestContext rqCtx) throws Exception {
-        // Finds route handler to execute and render result
-        RouteMatch match = routeRegistry.findTargetForRequestedRoute(rqCtx.httpMethod, rqCtx.requestUri, rqCtx.acceptType);
-
+    private void executeRouteHandlerAndRenderResult(RouteMatch match, RequestContext rqCtx) throws Exception {
+        // Executes the route handler and renders the result
         if (match != null) {
             if (match.route != null) {
-                rqCtx.reqWrapper.setDelegate(RequestResponseFactory.create(match, rqCtx.httpReq));
-                rqCtx.resWrapper.setDelegate(RequestResponseFactory.create(rqCtx.httpRes));
+                RequestResponseFactory.changeMatch(rqCtx.request, match);
+
+                Object handlerResult = match.route.handle(rqCtx.request, rqCtx.response);
+                if (handlerResult == null) {
+                    handlerResult = RequestResponseFactory.file(rqCtx.response);
+                }
+
+                if (BinaryBody.isBinary(handlerResult)) {
+                    // Written as it is once the after filters have run, a body they set replaces it
+                    rqCtx.setBinaryBody(handlerResult);
+                    return;
+                }
 
-                Object handlerResult = match.route.handle(rqCtx.reqWrapper, rqCtx.resWrapper);
                 String renderedBodyContent = match.route.render(handlerResult);
 
                 rqCtx.setBodyContentNotNull(renderedBodyContent);
+                if (renderedBodyContent != null) {
+                    // After filters see the rendered body
+                    rqCtx.response.body(renderedBodyContent);
+                }
             }
         } else {
             // The HEAD method is identical to GET except that the server
             // MUST NOT return a message-body in the response.
             // If GET is mapped return same headers and empty body.
             if (rqCtx.httpMethod == HttpMethod.head && rqCtx.bodyContent == null) {
-                RouteMatch getMatch = routeRegistry.findTargetForRequestedRoute(HttpMethod.get, rqCtx.requestUri, rqCtx.acceptType);
+                RouteMatch getMatch = routeRegistry.findTargetForRequestedRoute(HttpMethod.get, rqCtx.requestPath, rqCtx.acceptType);
                 // Use empty body to make request consumed
                 rqCtx.bodyContent = getMatch != null ? StringUtils.EMPTY : null;
             }
@@ -208,13 +283,17 @@ public class MatcherFilter implements Filter {
     private void handleHaltException(HaltException exception, RequestContext rqCtx) {
         log.debug(format("Halt occurred: statusCode=''{0}''", exception.getStatusCode()));
         rqCtx.httpRes.setStatus(exception.getStatusCode());
+        rqCtx.resetStream();
+        rqCtx.discardBinaryBody();
         rqCtx.setBodyContentOrEmpty(exception.getBody());
     }
 
     private void handleException(Exception exception, RequestContext rqCtx) {
         ExceptionHandlerImpl handler = ExceptionMapper.getInstance().getHandler(exception);
+        rqCtx.resetStream();
+        rqCtx.discardBinaryBody();
         if (handler != null) {
-            handler.handle(exception, rqCtx.reqWrapper, rqCtx.resWrapper);
+            handler.handle(exception, rqCtx.request, rqCtx.response);
             rqCtx.setBodyContentFromResponse();
         } else {
             log.error(StringUtils.EMPTY, exception);
@@ -228,37 +307,67 @@ public class MatcherFilter implements Filter {
      */
     private static class RequestContext {
         public final HttpMethod httpMethod;
-        public final String requestUri;
+        public final RequestPath requestPath;
         public final String acceptType;
-        public final RequestWrapper reqWrapper;
-        public final ResponseWrapper resWrapper;
+        public final Request request;
+        public final Response response;
         public final HttpServletRequest httpReq;
         public final HttpServletResponse httpRes;
 
         public String bodyContent;
+        public Object binaryBody;
+        public CompressingOutputStream compression;
 
-        private RequestContext(HttpMethod httpMethod, String requestUri, String acceptType,
-                               RequestWrapper reqWrapper, ResponseWrapper resWrapper,
+        private RequestContext(HttpMethod httpMethod, RequestPath requestPath, String acceptType,
+                               Request request, Response response,
                                HttpServletRequest httpReq, HttpServletResponse httpRes) {
             this.httpMethod = httpMethod;
-            this.requestUri = requestUri;
+            this.requestPath = requestPath;
             this.acceptType = acceptType;
-            this.reqWrapper = reqWrapper;
-            this.resWrapper = resWrapper;
+            this.request = request;
+            this.response = response;
             this.httpReq = httpReq;
             this.httpRes = httpRes;
         }
 
         public void setBodyContentNotNull(String bodyContent) {
+            if (bodyContent != null) {
+                discardBinaryBody();
+            }
             this.bodyContent = defaultString(bodyContent, this.bodyContent);
         }
 
+        public void setBinaryBody(Object binaryBody) {
+            this.binaryBody = binaryBody;
+            this.bodyContent = null;
+            response.body(null);
+        }
+
+        public void resetStream() {
+            // Lets a halt or error body replace a streamed body that hasn't been committed yet
+            RequestResponseFactory.resetStream(response);
+            if (compression != null) {
+                compression.reset();
+            }
+        }
+
+        public void discardBinaryBody() {
+            if (binaryBody instanceof Closeable) {
+                try {
+                    ((Closeable) binaryBody).close();
+                } catch (IOException e) {
+                    log.warn("Could not close discarded body", e);
+                }
+            }
+            binaryBody = null;
+        }
+
         public void setBodyContentOrEmpty(String bodyContent) {
             this.bodyContent = defaultString(bodyContent, StringUtils.EMPTY);
         }
 
         public void setBodyContentFromResponse() {
-            setBodyContentNotNull(resWrapper.getDelegate().body());
+            setBodyContentNotNull(response.body());
         }
     }
 }
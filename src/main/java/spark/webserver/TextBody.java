@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import spark.compression.CompressingOutputStream;
+import spark.utils.BufferPool;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes rendered String bodies as UTF-8. The body is encoded straight into a pooled buffer with a per thread
+ * encoder, and its exact length is set as Content-Length up front so that the container can send the headers and
+ * a body that fits the buffer in a single write instead of chunking it. Compressed bodies are encoded into the
+ * compressing stream instead, their length is left to the container.
+ */
+final class TextBody {
+
+    private static final String DEFAULT_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    private static final ThreadLocal<CharsetEncoder> ENCODER = ThreadLocal.withInitial(
+            () -> StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private TextBody() {
+    }
+
+    /**
+     * Writes a String as the response body
+     *
+     * @param body        the body
+     * @param response    the response
+     * @param compression the stream compressing the body of the response, null if it isn't compressed
+     * @throws IOException if the body can't be written
+     */
+    static void write(String body, HttpServletResponse response, CompressingOutputStream compression)
+            throws IOException {
+        if (response.getContentType() == null) {
+            response.setContentType(DEFAULT_CONTENT_TYPE);
+        }
+        int length = utf8Length(body);
+        if (compression != null && compression.compresses(length)) {
+            encode(body, compression);
+            compression.finish();
+            return;
+        }
+        response.setContentLength(length);
+        if (!body.isEmpty()) {
+            encode(body, response.getOutputStream());
+        }
+    }
+
+    private static void encode(String body, OutputStream out) throws IOException {
+        CharsetEncoder encoder = ENCODER.get().reset();
+        CharBuffer in = CharBuffer.wrap(body);
+        byte[] chunk = BufferPool.acquire();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            CoderResult result;
+            do {
+                result = encoder.encode(in, buffer, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isUnderflow()) {
+                    encoder.flush(buffer);
+                }
+                out.write(chunk, 0, buffer.position());
+                buffer.clear();
+            } while (result.isOverflow());
+        } finally {
+            BufferPool.release(chunk);
+        }
+    }
+
+    /**
+     * @param s a String
+     * @return the number of bytes the String takes in UTF-8, an unpaired surrogate taking one byte for its
+     * replacement
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // Four bytes for the two chars of the pair
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -1,23 +1,38 @@
 package spark;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.compression.CompressionConfig;
 import spark.examples.exception.BaseException;
 import spark.examples.exception.NotFoundException;
 import spark.examples.exception.SubclassOfBaseException;
+import spark.route.HttpMethod;
 import spark.util.SparkTestUtil;
 import spark.util.SparkTestUtil.UrlResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static spark.Spark.after;
 import static spark.Spark.before;
+import static spark.Spark.compression;
 import static spark.Spark.exception;
 import static spark.Spark.externalStaticFileLocation;
 import static spark.Spark.get;
@@ -96,6 +111,79 @@ public class GenericIntegrationTest {
 
         after("/hi", (request, response) -> response.header("after", "foobar"));
 
+        get("/binary", (request, response) -> "Binary body".getBytes(StandardCharsets.UTF_8));
+
+        get("/stream", (request, response) -> new ByteArrayInputStream("Streamed body".getBytes(StandardCharsets.UTF_8)));
+
+        get("/text", (request, response) -> StringUtils.repeat("h\u00e9llo \u20ac\ud83d\ude00 ", 2000));
+
+        get("/streamed", (request, response) -> {
+            response.writer().write("Streamed ");
+            response.flush();
+            response.writer().write("in two parts");
+            return "ignored";
+        });
+
+        get("/streamed/halt", (request, response) -> {
+            response.writer().write("Discarded");
+            halt(401, "Halted");
+            return null;
+        });
+
+        CompressionConfig compressionConfig = new CompressionConfig().minSize(64);
+        compression(compressionConfig);
+        // The config was copied, routes keep the minimum size of 64
+        compressionConfig.minSize(100000);
+
+        get("/compressed", (request, response) -> StringUtils.repeat("compressible ", 100));
+
+        get("/compressed/short", (request, response) -> "short");
+
+        get("/compressed/streamed", (request, response) -> {
+            response.writer().write(StringUtils.repeat("first ", 100));
+            response.flush();
+            response.writer().write(StringUtils.repeat("second ", 100));
+            return null;
+        });
+
+        get("/compressed/stream", (request, response) -> {
+            response.type("text/plain");
+            return new ByteArrayInputStream(StringUtils.repeat("compressible ", 100).getBytes(StandardCharsets.UTF_8));
+        });
+
+        get("/compressed/bytes", (request, response) -> {
+            response.type("text/plain");
+            return (Consumer<OutputStream>) out -> {
+                try {
+                    for (byte b : StringUtils.repeat("byte by byte ", 2000).getBytes(StandardCharsets.UTF_8)) {
+                        out.write(b);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        });
+
+        get("/compressed/binary", (request, response) -> StringUtils.repeat("binary ", 100).getBytes(StandardCharsets.UTF_8));
+
+        RouteImpl uncompressed = new RouteImpl("/compressed/none", "*/*") {
+            @Override
+            public Object handle(Request request, Response response) {
+                return StringUtils.repeat("compressible ", 100);
+            }
+        };
+        uncompressed.compression(CompressionConfig.NONE);
+        Spark.addRoute(HttpMethod.get, uncompressed);
+
+        compression(null);
+
+        get("/file", (request, response) -> {
+            response.file(tmpExternalFile.toPath());
+            return null;
+        });
+
+        post("/upload", (request, response) -> request.part("file").path());
+
         get("/throwexception", (request, response) -> {
             throw new UnsupportedOperationException();
         });
@@ -142,6 +230,139 @@ public class GenericIntegrationTest {
         Assert.assertEquals("{\"message\": \"Hello World\"}", response.body);
     }
 
+    @Test
+    public void binary_results_should_be_written_as_they_are() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/binary", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Binary body", response.body);
+        Assert.assertEquals("11", response.headers.get("Content-Length"));
+        Assert.assertEquals("application/octet-stream", response.headers.get("Content-Type"));
+
+        response = testUtil.doMethod("GET", "/stream", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Streamed body", response.body);
+    }
+
+    @Test
+    public void text_bodies_should_be_sent_with_their_encoded_length() throws Exception {
+        String text = StringUtils.repeat("h\u00e9llo \u20ac\ud83d\ude00 ", 2000);
+        UrlResponse response = testUtil.doMethod("GET", "/text", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(text, response.body);
+        Assert.assertEquals(Integer.toString(text.getBytes(StandardCharsets.UTF_8).length),
+                            response.headers.get("Content-Length"));
+
+        response = testUtil.doMethod("GET", "/hi", null);
+        Assert.assertEquals("12", response.headers.get("Content-Length"));
+    }
+
+    @Test
+    public void streamed_bodies_should_replace_the_route_result() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/streamed", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Streamed in two parts", response.body);
+        Assert.assertEquals("text/html; charset=utf-8", response.headers.get("Content-Type").toLowerCase());
+
+        response = testUtil.doMethod("GET", "/streamed/halt", null);
+        Assert.assertEquals(401, response.status);
+        Assert.assertEquals("Halted", response.body);
+    }
+
+    @Test
+    public void bodies_should_be_compressed_as_negotiated() throws Exception {
+        HttpURLConnection connection = open("/compressed", "deflate;q=0.5, gzip");
+        Assert.assertEquals("gzip", connection.getContentEncoding());
+        Assert.assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+        Assert.assertEquals(StringUtils.repeat("compressible ", 100), read(connection));
+
+        connection = open("/compressed/streamed", "gzip;q=0, deflate");
+        Assert.assertEquals("deflate", connection.getContentEncoding());
+        Assert.assertEquals(StringUtils.repeat("first ", 100) + StringUtils.repeat("second ", 100), read(connection));
+
+        connection = open("/compressed", null);
+        Assert.assertNull(connection.getContentEncoding());
+        Assert.assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+        Assert.assertEquals(StringUtils.repeat("compressible ", 100), read(connection));
+
+        connection = open("/compressed/short", "gzip");
+        Assert.assertNull(connection.getContentEncoding());
+        Assert.assertEquals("short", read(connection));
+
+        connection = open("/compressed/stream", "gzip");
+        Assert.assertEquals("gzip", connection.getContentEncoding());
+        Assert.assertEquals(StringUtils.repeat("compressible ", 100), read(connection));
+
+        connection = open("/compressed/bytes", "deflate");
+        Assert.assertEquals("deflate", connection.getContentEncoding());
+        Assert.assertEquals(StringUtils.repeat("byte by byte ", 2000), read(connection));
+
+        // Not a compressed content type
+        connection = open("/compressed/binary", "gzip");
+        Assert.assertNull(connection.getContentEncoding());
+        Assert.assertEquals("700", connection.getHeaderField("Content-Length"));
+        Assert.assertEquals(StringUtils.repeat("binary ", 100), read(connection));
+
+        connection = open("/compressed/none", "gzip");
+        Assert.assertNull(connection.getContentEncoding());
+        Assert.assertNull(connection.getHeaderField("Vary"));
+        Assert.assertEquals(StringUtils.repeat("compressible ", 100), read(connection));
+
+        connection = open("/hi", "gzip");
+        Assert.assertNull(connection.getContentEncoding());
+        Assert.assertNull(connection.getHeaderField("Vary"));
+    }
+
+    private static HttpURLConnection open(String path, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567" + path).openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        Assert.assertEquals(200, connection.getResponseCode());
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        if ("gzip".equals(connection.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        } else if ("deflate".equals(connection.getContentEncoding())) {
+            in = new InflaterInputStream(in);
+        }
+        try (InputStream body = in) {
+            return IOUtils.toString(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void files_should_be_sent_with_content_headers() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/file", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Content of external file", response.body);
+        Assert.assertEquals("24", response.headers.get("Content-Length"));
+        Assert.assertEquals("text/html", response.headers.get("Content-Type"));
+        Assert.assertNotNull(response.headers.get("Last-Modified"));
+    }
+
+    @Test
+    public void spooled_uploads_should_be_readable_until_the_body_is_written() throws Exception {
+        String content = StringUtils.repeat("uploaded ", 4000);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567/upload").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=xyz");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(("--xyz\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"upload.txt\"\r\n"
+                    + "Content-Type: text/plain\r\n\r\n"
+                    + content + "\r\n--xyz--\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals(String.valueOf(content.length()), connection.getHeaderField("Content-Length"));
+        Assert.assertEquals(content, read(connection));
+    }
+
     @Test
     public void template_view_should_be_rendered_with_given_model_view_object() throws Exception {
         UrlResponse response = testUtil.doMethod("GET", "/templateView", null);
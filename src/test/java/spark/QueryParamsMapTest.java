@@ -3,8 +3,14 @@ package spark;
 import org.junit.Test;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static java.util.Arrays.asList;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -115,6 +121,62 @@ public class QueryParamsMapTest {
         assertEquals("fede",map.get("name")[0]);
         assertEquals("dayan",map.get("last")[0]);
     }
-    
-    
+
+    @Test
+    public void buildsTheSameTreeAsTheRegexParser() {
+        List<String> keys = asList("user", "user[name]", "user[info][name]", "user[]", "[user]", "]user[", "a[b]]c",
+                                   "a[[b]]", "a[b][c][d]", "[]", "", "a[b", "k0[1]", "k0[2]", "k0[3]", "k0[4]",
+                                   "k0[5]", "k0[6]", "k0[7]", "k0[8]", "k0[9]", "k0[10]", "k0[1][x]");
+        QueryParamsMap queryMap = new QueryParamsMap();
+        Map<String, Object> expected = new HashMap<>();
+        for (String key : keys) {
+            queryMap.loadKeys(key, new String[] {key});
+            regexLoadKeys(expected, key, key);
+            if (key.isEmpty() || key.equals("[]")) {
+                continue;
+            }
+            String[] parsed = queryMap.parseKey(key);
+            Matcher m = KEY.matcher(key);
+            if (m.find()) {
+                assertArrayEquals(key, new String[] {QueryParamsMap.cleanKey(m.group()), key.substring(m.end())}, parsed);
+            } else {
+                assertNull(key, parsed);
+            }
+        }
+        assertTree(expected, queryMap);
+        assertEquals("k0[10]", queryMap.value("k0", "10"));
+        assertEquals("k0[1][x]", queryMap.value("k0", "1", "x"));
+    }
+
+    private static final Pattern KEY = Pattern.compile("\\A[\\[\\]]*([^\\[\\]]+)\\]*");
+
+    /**
+     * The regex based parsing the hand written one replaces, building a tree of maps with values under the null key
+     */
+    @SuppressWarnings("unchecked")
+    private static void regexLoadKeys(Map<String, Object> node, String key, String value) {
+        Matcher m = KEY.matcher(key);
+        if (!m.find()) {
+            return;
+        }
+        String name = QueryParamsMap.cleanKey(m.group());
+        String rest = key.substring(m.end());
+        Map<String, Object> child = (Map<String, Object>) node.computeIfAbsent(name, k -> new HashMap<>());
+        if (!rest.isEmpty()) {
+            regexLoadKeys(child, rest, value);
+        } else {
+            child.put(null, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertTree(Map<String, Object> expected, QueryParamsMap actual) {
+        assertEquals(expected.get(null), actual.value());
+        Map<String, QueryParamsMap> children = actual.getQueryMap();
+        assertEquals(expected.size() - (expected.containsKey(null) ? 1 : 0), children.size());
+        for (Map.Entry<String, QueryParamsMap> child : children.entrySet()) {
+            assertTree((Map<String, Object>) expected.get(child.getKey()), child.getValue());
+        }
+    }
+
 }
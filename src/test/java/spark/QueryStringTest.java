@@ -0,0 +1,61 @@
+package spark;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryStringTest {
+
+    @Test
+    public void decodesOnlyTheValuesAskedFor() {
+        QueryString query = new QueryString("name=J%C3%BCrgen+M&&tag=a&tag=b%2&flag&na%6De=second&empty=");
+
+        assertEquals("Jürgen M", query.value("name"));
+        assertEquals(asList("Jürgen M", "second"), query.values("name"));
+        assertEquals(asList("a", "b%2"), query.values("tag"));
+        assertEquals("", query.value("flag"));
+        assertEquals("", query.value("empty"));
+        assertTrue(query.contains("flag"));
+        assertNull(query.value("missing"));
+        assertEquals(asList("name", "tag", "flag", "empty"), asList(query.names().toArray()));
+        assertNull(new QueryString(null).value("name"));
+    }
+
+    @Test
+    public void readsTypedValuesFromTheQueryString() {
+        QueryString query = new QueryString("limit=50&offset=-100&big=9223372036854775807&min=-9223372036854775808"
+                                                    + "&plus=%2B7&debug=TRUE&quiet=no&empty=");
+
+        assertEquals(50, query.intValue("limit", 10));
+        assertEquals(-100, query.intValue("offset", 0));
+        assertEquals(10, query.intValue("missing", 10));
+        assertEquals(10, query.intValue("empty", 10));
+        assertEquals(Long.MAX_VALUE, query.longValue("big", 0));
+        assertEquals(Long.MIN_VALUE, query.longValue("min", 0));
+        assertEquals(7, query.longValue("plus", 0));
+        assertTrue(query.booleanValue("debug", false));
+        assertFalse(query.booleanValue("quiet", true));
+        assertTrue(query.booleanValue("missing", true));
+
+        for (String bad : asList("big", "debug")) {
+            try {
+                query.intValue(bad, 0);
+                fail(bad + " is not an int");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+        try {
+            new QueryString("n=9223372036854775808").longValue("n", 0);
+            fail("Overflows a long");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+}
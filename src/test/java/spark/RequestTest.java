@@ -3,6 +3,7 @@ package spark;
 import org.junit.Test;
 import spark.route.HttpMethod;
 import spark.route.RouteMatch;
+import spark.utils.BufferPool;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
@@ -19,16 +20,27 @@ import javax.servlet.http.HttpSession;
 import javax.servlet.http.Part;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RequestTest {
 
@@ -81,6 +93,265 @@ public class RequestTest {
         assertEquals("Should have delegated getting the context path", THE_CONTEXT_PATH, request.contextPath());
     }
     
+    @Test
+    public void paramsAndSplatAreResolvedFromTheMatch() {
+        Match match = new RouteMatch(HttpMethod.get, "*/*", "/:Id/:id/files/*", "/1/2/files/a//b/c", null);
+        Request request = new Request(match, new MockedHttpServletRequest(new HashMap<>()));
+
+        assertEquals("2", request.params("ID"));
+        assertEquals("2", request.params(":id"));
+        assertEquals("1", request.params(0));
+        assertEquals(null, request.params("name"));
+        assertEquals("2", request.params().get(":id"));
+        assertEquals("a/b/c", request.splat()[0]);
+
+        match = new RouteMatch(HttpMethod.get, "*/*", "/*/to/*", "/from/to/there", null);
+        request = new Request(match, new MockedHttpServletRequest(new HashMap<>()));
+        assertEquals("from", request.splat()[0]);
+        assertEquals("there", request.splat()[1]);
+    }
+
+    @Test
+    public void decodesParamsOnDemand() {
+        Match match = new RouteMatch(HttpMethod.get, "*/*", "/:name/:plus/:bad", "/J%C3%BCrgen%20M/a+b/%C3%28", null);
+        Request request = new Request(match, new MockedHttpServletRequest(new HashMap<>()));
+
+        assertEquals("Jürgen M", request.params("name"));
+        assertSame(request.params("name"), request.params(0));
+        assertEquals("a+b", request.params("plus"));
+        assertEquals("J%C3%BCrgen%20M", request.rawParams("name"));
+        try {
+            request.params("bad");
+            fail("Invalid UTF-8 should be rejected");
+        } catch (HaltException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void keepsLoadedStateWhenTheMatchChanges() {
+        Map<String,String[]> params = new HashMap<>();
+        params.put("user[name]",new String[] {"Federico"});
+        Request request = RequestResponseFactory.create(new MockedHttpServletRequest(params));
+
+        RequestResponseFactory.changeMatch(request, new RouteMatch(HttpMethod.get, "*/*", "/:name/*", "/hi/there", null));
+        assertEquals("hi", request.params("name"));
+        assertEquals("there", request.splat()[0]);
+        QueryParamsMap queryMap = request.queryMap();
+
+        RequestResponseFactory.changeMatch(request, new RouteMatch(HttpMethod.get, "*/*", "/hi/:name", "/hi/there", null));
+        assertEquals("there", request.params("name"));
+        assertEquals(0, request.splat().length);
+        assertSame(queryMap, request.queryMap());
+    }
+
+    @Test
+    public void readsTheBodyOnceAndDecodesItWithTheRequestCharset() throws Exception {
+        byte[] bytes = "grüße".getBytes("ISO-8859-1");
+        Request request = new Request(match, bodyRequest(bytes, bytes.length, "ISO-8859-1"));
+
+        assertArrayEquals(bytes, request.bodyAsBytes());
+        assertEquals("grüße", request.body());
+        assertEquals(bytes.length, request.bodyAsByteBuffer().remaining());
+        assertEquals('g', request.bodyAsStream().read());
+
+        byte[] large = new byte[3 * BufferPool.BUFFER_SIZE + 1];
+        large[large.length - 1] = 'x';
+        request = new Request(match, bodyRequest(large, -1, null));
+        assertArrayEquals(large, request.bodyAsBytes());
+
+        large = new byte[200 * 1024 + 1];
+        large[large.length - 1] = 'x';
+        request = new Request(match, bodyRequest(large, large.length, null));
+        assertArrayEquals(large, request.bodyAsBytes());
+
+        // An announced length the client never sends
+        request = new Request(match, bodyRequest(bytes, Integer.MAX_VALUE, null));
+        assertArrayEquals(bytes, request.bodyAsBytes());
+    }
+
+    @Test
+    public void rejectsBodiesLargerThanTheRouteAccepts() throws Exception {
+        byte[] bytes = new byte[100];
+        try {
+            new Request(match, bodyRequest(bytes, bytes.length, null)).maxBodySize(99);
+            fail("Announced body is too large");
+        } catch (HaltException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+
+        Request request = new Request(match, bodyRequest(bytes, -1, null));
+        request.maxBodySize(99);
+        try {
+            request.bodyAsBytes();
+            fail("Sent body is too large");
+        } catch (HaltException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void decodesTheBodyOnceWithTheReaderOfTheRouteOrContentType() throws Exception {
+        byte[] bytes = "42".getBytes("UTF-8");
+        int[] reads = new int[1];
+        BodyReader reader = (body, charset, type) -> {
+            reads[0]++;
+            return Integer.valueOf(new Scanner(body, charset.name()).next());
+        };
+
+        Request request = new Request(match, bodyRequest(bytes, bytes.length, null));
+        RequestResponseFactory.bodyReader(request, reader);
+        assertEquals(Integer.valueOf(42), request.bodyAs(Integer.class));
+        assertSame(request.bodyAs(Integer.class), request.bodyAs(Integer.class));
+        assertEquals(1, reads[0]);
+
+        BodyReaderMapper.getInstance().map("text/*", reader);
+        try {
+            request = new Request(match, new MockedHttpServletRequest(new HashMap<>()) {
+                @Override
+                public ServletInputStream getInputStream() throws IOException {
+                    return bodyRequest(bytes, bytes.length, null).getInputStream();
+                }
+
+                @Override
+                public String getContentType() {
+                    return "Text/Plain; charset=UTF-8";
+                }
+            });
+            assertEquals(Integer.valueOf(42), request.bodyAs(Integer.class));
+        } finally {
+            BodyReaderMapper.getInstance().clear();
+        }
+    }
+
+    @Test
+    public void streamsLinesAndRecordsOfTheBody() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            body.append("ü").append(i).append("\r\n");
+        }
+        body.append("\n");
+        byte[] bytes = body.toString().getBytes("UTF-8");
+
+        Request request = new Request(match, bodyRequest(bytes, -1, null));
+        try (Stream<String> lines = request.lines()) {
+            assertEquals("ü4999", lines.skip(4999).findFirst().get());
+        }
+
+        request = new Request(match, bodyRequest(bytes, -1, null));
+        RequestResponseFactory.bodyReader(request, (in, charset, type) -> new Scanner(in, charset.name()).next().substring(1));
+        try (Stream<String> records = request.records(String.class)) {
+            assertEquals(5000, records.mapToInt(Integer::parseInt).count());
+        }
+
+        bytes = "a\rbb\n\nccc".getBytes("UTF-8");
+        request = new Request(match, bodyRequest(bytes, -1, null));
+        try (Stream<String> lines = request.lines(3)) {
+            assertEquals(asList("a", "bb", "", "ccc"), lines.collect(Collectors.toList()));
+        }
+
+        request = new Request(match, bodyRequest(bytes, -1, null));
+        try (Stream<String> lines = request.lines(2)) {
+            lines.count();
+            fail("A line is longer than the maximum");
+        } catch (HaltException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void readsCookiesAndHeadersOnceAndViewsAttributesLive() {
+        Map<String, Object> attributes = new HashMap<>();
+        int[] cookieReads = new int[1];
+        Request request = new Request(match, new MockedHttpServletRequest(new HashMap<>()) {
+            @Override
+            public Cookie[] getCookies() {
+                cookieReads[0]++;
+                return new Cookie[] {new Cookie("session", "first"), new Cookie("Session", "other"),
+                                     new Cookie("session", "second")};
+            }
+
+            @Override
+            public Enumeration<String> getHeaderNames() {
+                return Collections.enumeration(asList("Host", "Content-Type"));
+            }
+
+            @Override
+            public Object getAttribute(String name) {
+                return attributes.get(name);
+            }
+
+            @Override
+            public Enumeration<String> getAttributeNames() {
+                return Collections.enumeration(attributes.keySet());
+            }
+        });
+
+        assertEquals("first", request.cookie("session"));
+        assertEquals("other", request.cookie("Session"));
+        assertSame(request.cookies(), request.cookies());
+        assertEquals(1, cookieReads[0]);
+
+        assertTrue(request.headers().contains("content-type"));
+        assertSame(request.headers(), request.headers());
+
+        Set<String> names = request.attributes();
+        assertTrue(names.isEmpty());
+        attributes.put("user", "fede");
+        assertTrue(names.contains("user"));
+        assertEquals(1, names.size());
+        assertSame(names, request.attributes());
+    }
+
+    private static final Request.Key<String> USER = Request.Key.create("user");
+    private static final Request.Key<String> TENANT = Request.Key.create("tenant");
+
+    @Test
+    public void memoizesValuesOncePerExchange() {
+        Request request = new Request(match, new MockedHttpServletRequest(new HashMap<>()));
+        int[] calls = new int[1];
+
+        assertEquals(null, request.memo(USER));
+        assertEquals("fede", request.memo(USER, () -> "fede" + (calls[0]++ > 0 ? calls[0] : "")));
+        assertEquals("fede", request.memo(USER, () -> "fede" + (calls[0]++ > 0 ? calls[0] : "")));
+        assertEquals("fede", request.memo(USER));
+        assertEquals(null, request.memo(TENANT, () -> {
+            calls[0]++;
+            return null;
+        }));
+        assertEquals(null, request.memo(TENANT, () -> "computed again"));
+        assertEquals(2, calls[0]);
+
+        Request.Key<Integer> late = Request.Key.create("late");
+        assertEquals(Integer.valueOf(1), request.memo(late, () -> 1));
+        assertEquals(null, new Request(match, new MockedHttpServletRequest(new HashMap<>())).memo(USER));
+    }
+
+    private static HttpServletRequest bodyRequest(byte[] body, int contentLength, String encoding) {
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new MockedHttpServletRequest(new HashMap<>()) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return in.read();
+                    }
+                };
+            }
+
+            @Override
+            public int getContentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public String getCharacterEncoding() {
+                return encoding;
+            }
+        };
+    }
+
     public static class MockedHttpServletRequest implements HttpServletRequest {
         private Map<String, String[]> params;
 
@@ -0,0 +1,151 @@
+package spark.interceptor;
+
+import org.junit.After;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.route.HttpMethod;
+import spark.route.RequestPath;
+import spark.route.RouteEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class InterceptorRegistryTest {
+
+    private static final List<String> ROUTES = asList(
+            "/", "/hi", "/hi/:name", "/hi/:name/*", "/admin/*", "/admin/users", "/files/*/meta", "/*");
+
+    private static final List<String> PATHS = asList(
+            "/", "/hi", "/hi/", "/hi/there", "/hi/there/again", "/admin", "/admin/", "/admin/users",
+            "/files/a/meta", "/other");
+
+    private final InterceptorRegistry registry = InterceptorRegistry.get();
+
+    @After
+    public void clear() {
+        registry.clearInterceptors();
+    }
+
+    @Test
+    public void routeChainsMatchLikeFilteringEveryRegistration() {
+        add("all", new InterceptorRegistration().before());
+        add("hi", new InterceptorRegistration().before("/hi/*"));
+        add("hiName", new InterceptorRegistration().before("/hi/:name", "/hi/*"));
+        add("admin", new InterceptorRegistration().before("/admin/*").except("/admin/login"));
+        add("notUsers", new InterceptorRegistration().before().except("/admin/users"));
+        add("posts", new InterceptorRegistration().before("/*").post());
+        add("after", new InterceptorRegistration().after("/hi/*"));
+        add("json", new InterceptorRegistration().before().accepting("application/json"));
+
+        for (String route : ROUTES) {
+            RouteEntry entry = new RouteEntry(HttpMethod.get, route, "*/*", route(route));
+            for (String path : PATHS) {
+                RequestPath requestPath = new RequestPath(path);
+                if (!entry.matches(HttpMethod.get, requestPath)) {
+                    continue;
+                }
+                for (InterceptorRegistration.InterceptionPhase phase : InterceptorRegistration.InterceptionPhase.values()) {
+                    for (String acceptType : asList(null, "text/html", "application/json")) {
+                        InterceptorChain chain = registry.findChain(phase, entry, HttpMethod.get, requestPath);
+                        List<String> chained = new ArrayList<>();
+                        for (int i = 0; i < chain.size(); i++) {
+                            InterceptorMatch match = chain.match(i, requestPath, acceptType);
+                            if (match != null) {
+                                chained.add(match.interceptor + " " + match.matchedUri);
+                            }
+                        }
+                        List<String> filtered = new ArrayList<>();
+                        for (InterceptorMatch match : registry.findInterceptors(phase, HttpMethod.get, path, acceptType)) {
+                            filtered.add(match.interceptor + " " + match.matchedUri);
+                        }
+                        assertEquals(route + " " + path + " " + phase + " " + acceptType, filtered, chained);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackToTheTrieForUnmatchedPaths() {
+        add("hi", new InterceptorRegistration().before("/hi/*"));
+        add("hiName", new InterceptorRegistration().before("/hi/:name"));
+        add("get", new InterceptorRegistration().before("/hi/*").get());
+
+        assertEquals(asList("hi /hi/*", "hiName /hi/:name"), names(HttpMethod.post, "/hi/there"));
+        assertEquals(asList("hi /hi/*"), names(HttpMethod.post, "/hi/there/again"));
+        assertEquals(asList(), names(HttpMethod.post, "/other"));
+    }
+
+    @Test
+    public void resolvesChainsAgainWhenRegistrationsChange() {
+        RouteEntry entry = new RouteEntry(HttpMethod.get, "/hi", "*/*", route("/hi"));
+        InterceptorRegistration registration = add("late", new InterceptorRegistration().before());
+
+        assertEquals(1, registry.findChain(InterceptorRegistration.InterceptionPhase.before, entry, HttpMethod.get, new RequestPath("/hi")).size());
+        registration.on("/other");
+        assertEquals(0, registry.findChain(InterceptorRegistration.InterceptionPhase.before, entry, HttpMethod.get, new RequestPath("/hi")).size());
+    }
+
+    @Test
+    public void recompilesWhenThePublicSetsChange() {
+        InterceptorRegistration registration = add("sets", new InterceptorRegistration().before("/hi/*"));
+
+        registration.includedPaths.add("/other");
+        assertEquals(asList("sets /other"), names(HttpMethod.get, "/other"));
+
+        registration.includedPaths.remove("/other");
+        registration.excludedPaths.add("/hi/there");
+        assertEquals(asList(), names(HttpMethod.get, "/other"));
+        assertEquals(asList(), names(HttpMethod.get, "/hi/there"));
+        assertEquals(asList("sets /hi/*"), names(HttpMethod.get, "/hi/again"));
+
+        registration.acceptTypes.add("application/json");
+        assertEquals(1, registration.acceptMediaTypes().size());
+        registration.acceptTypes.clear();
+        assertEquals(0, registration.acceptMediaTypes().size());
+
+        registration.httpMethods.add(HttpMethod.post);
+        assertEquals(asList(), names(HttpMethod.get, "/hi/again"));
+        assertEquals(asList("sets /hi/*"), names(HttpMethod.post, "/hi/again"));
+        registration.phases.remove(InterceptorRegistration.InterceptionPhase.before);
+        registration.phases.add(InterceptorRegistration.InterceptionPhase.after);
+        assertEquals(asList(), names(HttpMethod.post, "/hi/again"));
+    }
+
+    private List<String> names(HttpMethod httpMethod, String path) {
+        List<String> names = new ArrayList<>();
+        for (InterceptorMatch match : registry.findInterceptors(InterceptorRegistration.InterceptionPhase.before, httpMethod, path, null)) {
+            names.add(match.interceptor + " " + match.matchedUri);
+        }
+        return names;
+    }
+
+    private InterceptorRegistration add(String name, InterceptorRegistration registration) {
+        registry.addInterceptor(registration.execute(new Interceptor() {
+            @Override
+            public void handle(Request request, Response response) {
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        }));
+        return registration;
+    }
+
+    private static RouteImpl route(String path) {
+        return new RouteImpl(path, "*/*") {
+            @Override
+            public Object handle(Request request, Response response) {
+                return path;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,115 @@
+package spark.multipart;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultipartParserTest {
+
+    private static final String BOUNDARY = "----spark7MA4YWxk";
+
+    @Test
+    public void findsTheBoundaryOfMultipartContentTypes() {
+        assertEquals(BOUNDARY, MultipartParser.boundary("multipart/form-data; boundary=" + BOUNDARY));
+        assertEquals("a b", MultipartParser.boundary("Multipart/Form-Data; charset=UTF-8; Boundary=\"a b\""));
+        assertNull(MultipartParser.boundary("application/json"));
+        assertNull(MultipartParser.boundary("multipart/form-data"));
+    }
+
+    @Test
+    public void keepsSmallPartsInMemoryAndSpoolsLargeOnes() throws Exception {
+        byte[] file = new byte[20000];
+        Arrays.fill(file, (byte) '-');
+        file[file.length - 1] = '\r';
+        byte[] body = body("preamble\r\n",
+                           "--" + BOUNDARY + "\r\n",
+                           "Content-Disposition: form-data; name=\"title\"\r\n\r\n",
+                           "grüße\r\n",
+                           "--" + BOUNDARY + "  \r\n",
+                           "Content-Disposition: form-data; name=\"upload\"; filename=\"a \\\"b\\\".bin\"\r\n",
+                           "Content-Type: application/octet-stream\r\n\r\n",
+                           file,
+                           "\r\n--" + BOUNDARY + "--\r\nepilogue");
+
+        List<MultipartPart> parts = parse(body, new MultipartConfig().spoolThreshold(1024));
+        assertEquals(2, parts.size());
+
+        MultipartPart title = parts.get(0);
+        assertEquals("title", title.name());
+        assertNull(title.fileName());
+        assertTrue(title.isInMemory());
+        assertEquals("grüße", title.value());
+
+        MultipartPart upload = parts.get(1);
+        assertEquals("upload", upload.name());
+        assertEquals("a \"b\".bin", upload.fileName());
+        assertEquals("application/octet-stream", upload.header("Content-Type"));
+        assertFalse(upload.isInMemory());
+        assertEquals(file.length, upload.size());
+        assertArrayEquals(file, Files.readAllBytes(upload.path()));
+
+        Path target = Files.createTempFile("moved-", null);
+        try {
+            upload.moveTo(target);
+            upload.delete();
+            assertArrayEquals(file, Files.readAllBytes(target));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    public void rejectsMalformedAndOversizedBodies() throws Exception {
+        byte[] body = body("--" + BOUNDARY + "\r\n",
+                           "Content-Disposition: form-data; name=\"a\"\r\n\r\n",
+                           "0123456789\r\n",
+                           "--" + BOUNDARY + "--\r\n");
+        assertStatus(413, body, new MultipartConfig().maxPartSize(9));
+        assertStatus(413, body, new MultipartConfig().maxTotalSize(9));
+        assertStatus(400, Arrays.copyOf(body, body.length - 10), new MultipartConfig());
+    }
+
+    private static void assertStatus(int status, byte[] body, MultipartConfig config) throws IOException {
+        try {
+            parse(body, config);
+            fail("Expected " + status);
+        } catch (MultipartException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    private static List<MultipartPart> parse(byte[] body, MultipartConfig config) throws IOException {
+        // Hands the body out in small reads, so boundaries and line breaks are split across reads
+        InputStream in = new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        return new MultipartParser(in, BOUNDARY, StandardCharsets.UTF_8, config).parse();
+    }
+
+    private static byte[] body(Object... chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object chunk : chunks) {
+            out.write(chunk instanceof byte[] ? (byte[]) chunk : ((String) chunk).getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+}
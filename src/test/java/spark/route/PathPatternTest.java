@@ -0,0 +1,168 @@
+package spark.route;
+
+import org.junit.Test;
+import spark.utils.SparkUtils;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathPatternTest {
+
+    private static final List<String> PATTERNS = asList(
+            "", "/", "*", "/*", "/hi", "/hi/", "/hi/*", "/hi/:name", "/hi/:name/", "/:first/:second", "/hi/:name/*",
+            "/hi/there", "/hi/there/*", "/*/there", "/hi*", "/hi/:name*", "/files/*/meta", "hi", "/a//b");
+
+    private static final List<String> PATHS = asList(
+            "", "/", "//", "/hi", "/hi/", "/hi//", "//hi", "/hi/there", "/hi/there/", "/hi/there/again",
+            "/hi/there/again/", "/files/a/meta", "/a/b", "/a/b/", "/hi*/x", "hi", "/x");
+
+    @Test
+    public void matchesLikeTheStringBasedMatcher() {
+        for (String pattern : PATTERNS) {
+            PathPattern compiled = PathPattern.compile(pattern);
+            for (String path : PATHS) {
+                assertEquals(pattern + " against " + path,
+                             stringMatches(pattern, path),
+                             compiled.matches(new RequestPath(path)));
+            }
+        }
+    }
+
+    @Test
+    public void decidesCoverageAndDisjointnessSoundly() {
+        for (String first : PATTERNS) {
+            PathPattern pattern = PathPattern.compile(first);
+            for (String second : PATTERNS) {
+                PathPattern other = PathPattern.compile(second);
+                for (String path : PATHS) {
+                    RequestPath requestPath = new RequestPath(path);
+                    if (pattern.covers(other) && other.matches(requestPath)) {
+                        assertTrue(first + " covers " + second + " but not " + path, pattern.matches(requestPath));
+                    }
+                    if (pattern.isDisjointFrom(other)) {
+                        assertFalse(first + " and " + second + " both match " + path,
+                                    pattern.matches(requestPath) && other.matches(requestPath));
+                    }
+                }
+            }
+        }
+
+        assertTrue(PathPattern.compile("/hi/*").covers(PathPattern.compile("/hi/:name/*")));
+        assertTrue(PathPattern.compile("/:first/:second").covers(PathPattern.compile("/hi/there")));
+        assertTrue(PathPattern.compile("/hi/there").isDisjointFrom(PathPattern.compile("/files/*/meta")));
+        assertFalse(PathPattern.compile("/hi/*").isDisjointFrom(PathPattern.compile("/:first/:second")));
+    }
+
+    @Test
+    public void recordsSegmentTypes() {
+        PathPattern pattern = PathPattern.compile("/hello/:name/*");
+
+        assertEquals(3, pattern.size());
+        assertEquals(PathPattern.SegmentType.LITERAL, pattern.type(0));
+        assertEquals(PathPattern.SegmentType.PARAM, pattern.type(1));
+        assertEquals(PathPattern.SegmentType.SPLAT, pattern.type(2));
+        assertFalse(pattern.isLiteral());
+        assertTrue(PathPattern.compile("/api/v1/status").isLiteral());
+    }
+
+    @Test
+    public void assignsParamSlots() {
+        PathPattern pattern = PathPattern.compile("/:org/:Repo/*/:id/:a/:b/:c/:d/:e/:f/:g/:h/:repo");
+
+        assertEquals(12, pattern.paramCount());
+        assertEquals(0, pattern.paramSlot("org"));
+        assertEquals(0, pattern.paramSlot(":ORG"));
+        assertEquals(3, pattern.paramSegment(2));
+        assertEquals(":repo", pattern.paramKey(1));
+        assertEquals("Repo", pattern.paramName(1));
+        // A later param with the same name hides the earlier one
+        assertEquals(11, pattern.paramSlot("REPO"));
+        String[] names = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(i + 3, pattern.paramSlot(names[i]));
+        }
+        assertEquals(-1, pattern.paramSlot("x"));
+        assertEquals(-1, pattern.paramSlot("or"));
+        assertEquals(-1, PathPattern.compile("/hi").paramSlot("org"));
+    }
+
+    @Test
+    public void tokenizesRequestPathIntoOffsets() {
+        RequestPath path = new RequestPath("//api/v1//status/");
+
+        assertEquals(3, path.size());
+        assertEquals("api", path.segment(0));
+        assertEquals("v1", path.segment(1));
+        assertEquals("status", path.segment(2));
+        assertTrue(path.segmentEquals(2, "status"));
+        assertFalse(path.segmentEquals(2, "statu"));
+        assertEquals("status".hashCode(), path.segmentHash(2));
+        assertTrue(path.endsWithSlash());
+    }
+
+    /**
+     * The list based matching algorithm the compiled patterns replace
+     */
+    private static boolean stringMatches(String p1, String p2) {
+        if (!p1.endsWith("*") && ((p2.endsWith("/") && !p1.endsWith("/"))
+                || (p1.endsWith("/") && !p2.endsWith("/")))) {
+            return false;
+        }
+        if (p1.equals(p2)) {
+            return true;
+        }
+
+        List<String> thisPathList = SparkUtils.convertRouteToList(p1);
+        List<String> pathList = SparkUtils.convertRouteToList(p2);
+
+        int thisPathSize = thisPathList.size();
+        int pathSize = pathList.size();
+
+        if (thisPathSize == pathSize) {
+            for (int i = 0; i < thisPathSize; i++) {
+                String thisPathPart = thisPathList.get(i);
+                String pathPart = pathList.get(i);
+
+                if ((i == thisPathSize - 1) && (thisPathPart.equals("*") && p1.endsWith("*"))) {
+                    return true;
+                }
+                if ((!thisPathPart.startsWith(":"))
+                        && !thisPathPart.equals(pathPart)
+                        && !thisPathPart.equals("*")) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            if (p1.endsWith("*")) {
+                if (pathSize == (thisPathSize - 1) && (p2.endsWith("/"))) {
+                    pathList.add("");
+                    pathList.add("");
+                    pathSize += 2;
+                }
+
+                if (thisPathSize < pathSize) {
+                    for (int i = 0; i < thisPathSize; i++) {
+                        String thisPathPart = thisPathList.get(i);
+                        String pathPart = pathList.get(i);
+                        if (thisPathPart.equals("*") && (i == thisPathSize - 1) && p1.endsWith("*")) {
+                            return true;
+                        }
+                        if (!thisPathPart.startsWith(":")
+                                && !thisPathPart.equals(pathPart)
+                                && !thisPathPart.equals("*")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package spark.route;
+
+import org.junit.Test;
+import spark.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class PathTrieTest {
+
+    private static final List<String> PATTERNS = asList(
+            "/", "*", "/*", "/hi", "/hi/", "/hi/*", "/hi/:name", "/hi/:name/", "/:first/:second",
+            "/hi/:name/*", "/hi/there", "/hi/there/*", "/paramandwild/:param/stuff/*", "/*/there",
+            "/hi*", "/hi/:name*", "/files/*", "/files/*/meta", "/a/b/c", "/:x");
+
+    private static final List<String> PATHS = asList(
+            "/", "/hi", "/hi/", "/hi//", "//hi", "/hi/there", "/hi/there/", "/hi/there/again",
+            "/hi/there/again/", "/paramandwild/thedude/stuff/andits", "/paramandwild/thedude/stuff/",
+            "/paramandwild/thedude/stuff", "/files/", "/files", "/files/a/meta", "/files/a/b/c",
+            "/a/b/c", "/a/b/c/", "/hi*/x", "/x");
+
+    @Test
+    public void findsSameRoutesAsPathMatcherInRegistrationOrder() {
+        PathTrie<String> trie = new PathTrie<>();
+        for (String pattern : PATTERNS) {
+            trie.add(pattern, pattern);
+        }
+
+        for (String path : PATHS) {
+            List<String> expected = new ArrayList<>();
+            for (String pattern : PATTERNS) {
+                if (PathMatcher.matches(pattern, path)) {
+                    expected.add(pattern);
+                }
+            }
+            assertEquals("Routes matching " + path, expected, trie.find(path));
+        }
+    }
+
+    @Test
+    public void keepsFirstRegisteredFirstForSamePattern() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.add("/users/:id", "second-level-param");
+        trie.add("/users/*", "splat");
+        trie.add("/users/:id", "duplicate");
+
+        assertEquals(asList("second-level-param", "splat", "duplicate"), trie.find("/users/42"));
+    }
+
+}
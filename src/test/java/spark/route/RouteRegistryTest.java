@@ -0,0 +1,180 @@
+package spark.route;
+
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteRegistryTest {
+
+    private final RouteRegistry registry = new RouteRegistry();
+
+    @Test
+    public void keepsDeclarationOrderBetweenLiteralAndPatternRoutes() {
+        RouteImpl byName = add(HttpMethod.get, "/:name");
+        add(HttpMethod.get, "/health");
+        RouteImpl status = add(HttpMethod.get, "/api/v1/status");
+        add(HttpMethod.get, "/api/v1/:resource");
+
+        assertSame(byName, find(HttpMethod.get, "/health"));
+        assertSame(status, find(HttpMethod.get, "/api/v1/status"));
+        assertSame(byName, find(HttpMethod.get, "/other"));
+        assertSame(byName, find(HttpMethod.get, "//health"));
+    }
+
+    @Test
+    public void looksUpRoutesOfTheRequestedMethodOnly() {
+        RouteImpl get = add(HttpMethod.get, "/items/:id");
+        RouteImpl post = add(HttpMethod.post, "/items/:id");
+
+        assertSame(get, find(HttpMethod.get, "/items/1"));
+        assertSame(post, find(HttpMethod.post, "/items/1"));
+        assertNull(find(HttpMethod.put, "/items/1"));
+    }
+
+    @Test
+    public void laterPatternRoutesDontShadowEarlierLiteralRoutes() {
+        RouteImpl literal = add(HttpMethod.get, "/users/me");
+        add(HttpMethod.get, "/users/:id");
+
+        assertSame(literal, find(HttpMethod.get, "/users/me"));
+    }
+
+    @Test
+    public void cachesHitsAndMissesUntilRoutesChange() {
+        registry.enableMatchCache(100);
+        RouteImpl hello = add(HttpMethod.get, "/hello/:name");
+
+        assertSame(hello, find(HttpMethod.get, "/hello/world"));
+        assertSame(hello, find(HttpMethod.get, "/hello/world"));
+        assertNull(find(HttpMethod.get, "/wp-login.php"));
+        assertNull(find(HttpMethod.get, "/wp-login.php"));
+        assertEquals(2, registry.matchCacheStats().hitCount());
+        assertEquals(2, registry.matchCacheStats().missCount());
+
+        RouteImpl login = add(HttpMethod.get, "/wp-login.php");
+        assertSame(login, find(HttpMethod.get, "/wp-login.php"));
+    }
+
+    @Test
+    public void lookupsNeverFailOrMissRoutesWhileRoutesAreAdded() throws Exception {
+        registry.enableMatchCache(100);
+        int routes = 2000;
+        AtomicInteger added = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                try {
+                    while (added.get() < routes && failure.get() == null) {
+                        int count = added.get();
+                        if (count > 0) {
+                            int i = ThreadLocalRandom.current().nextInt(count);
+                            String path = i % 2 == 0 ? "/literal/" + i : "/pattern/" + i + "/x";
+                            String found = matched(HttpMethod.get, path);
+                            if (found == null || !found.contains("/" + i + "/") && !found.endsWith("/" + i)) {
+                                throw new AssertionError("Lost route " + i + ", found " + found);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        for (int i = 0; i < routes; i++) {
+            add(HttpMethod.get, i % 2 == 0 ? "/literal/" + i : "/pattern/" + i + "/:name");
+            added.incrementAndGet();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(routes, registry.routes().size());
+        assertEquals("/pattern/1999/:name", matched(HttpMethod.get, "/pattern/1999/x"));
+    }
+
+    @Test
+    public void replacesAllRoutesAtOnce() throws Exception {
+        registry.replaceRoutes(generation(0));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger generations = new AtomicInteger(1);
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (generations.get() < 200) {
+                    List<RouteEntry> routes = registry.routes();
+                    String generation = routes.get(0).path;
+                    for (RouteEntry entry : routes) {
+                        if (!entry.path.equals("/status")
+                                && !entry.path.equals(generation)
+                                && !entry.path.startsWith(generation + "/")) {
+                            throw new AssertionError("Mixed routes " + routes);
+                        }
+                    }
+                    if (find(HttpMethod.get, "/status") == null) {
+                        throw new AssertionError("No status route after generation " + generation);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        reader.start();
+        while (generations.get() < 200) {
+            registry.replaceRoutes(generation(generations.getAndIncrement()));
+        }
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals("/199/b", matched(HttpMethod.get, "/199/b"));
+        assertNull(find(HttpMethod.get, "/198/b"));
+    }
+
+    private static List<RouteEntry> generation(int generation) {
+        List<RouteEntry> routes = new ArrayList<>();
+        for (String path : new String[] {"/" + generation, "/" + generation + "/b", "/status"}) {
+            routes.add(new RouteEntry(HttpMethod.get, path, "*/*", route(path)));
+        }
+        return routes;
+    }
+
+    private RouteImpl add(HttpMethod httpMethod, String path) {
+        RouteImpl route = route(path);
+        registry.addRoute(new RouteEntry(httpMethod, path, "*/*", route));
+        return route;
+    }
+
+    private static RouteImpl route(String path) {
+        return new RouteImpl(path, "*/*") {
+            @Override
+            public Object handle(Request request, Response response) {
+                return path;
+            }
+        };
+    }
+
+    private RouteImpl find(HttpMethod httpMethod, String path) {
+        RouteMatch match = registry.findTargetForRequestedRoute(httpMethod, path, null);
+        return match != null ? match.route : null;
+    }
+
+    private String matched(HttpMethod httpMethod, String path) {
+        RouteMatch match = registry.findTargetForRequestedRoute(httpMethod, path, null);
+        return match != null ? match.matchedUri : null;
+    }
+
+}
@@ -0,0 +1,65 @@
+package spark.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MimeParseTest {
+
+    private static final String BROWSER = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+
+    @Test
+    public void prefersTheMostSpecificRangeThenTheQuality() {
+        assertEquals("text/html", best(BROWSER, "application/json", "text/html"));
+        assertEquals("application/xml", best(BROWSER, "application/json", "application/xml"));
+        assertEquals("application/json", best("application/json, text/plain;q=0.5", "text/plain", "application/json"));
+        assertEquals("text/plain", best("text/*;q=0.3, text/plain;q=0.7", "text/html", "text/plain"));
+    }
+
+    @Test
+    public void firstCandidateWinsOnATie() {
+        assertEquals("application/json", best("*/*", "application/json", "application/xml"));
+    }
+
+    @Test
+    public void rejectsTypesWithZeroQuality() {
+        assertNull(best("application/json;q=0", "application/json"));
+        assertNull(best("text/html", "application/json"));
+        assertEquals("application/json", best("*", "application/json"));
+    }
+
+    @Test
+    public void handlesParametersAndMalformedRanges() {
+        assertEquals("text/html;level=1", best("text/html;level=1", "text/html", "text/html;level=1"));
+        assertEquals("application/json", best("application/json;q=", "application/json"));
+        assertEquals("application/json", best("application/json;q=7", "application/json"));
+        assertNull(best("application/json;q=abc", "application/json"));
+        assertEquals("application/json", best(",,garbage, application/json ;q=0.5", "application/json"));
+    }
+
+    @Test
+    public void keepsTheStringApi() {
+        assertEquals("application/json", MimeParse.mimeBestMatch(asList("application/json"), "application/*"));
+        assertEquals(MimeParse.NO_MIME_TYPE, MimeParse.mimeBestMatch(asList("application/json"), "text/html"));
+        assertTrue(MimeParse.mimeMatches(asList("text/html", "application/json"), BROWSER));
+        assertFalse(MimeParse.matches(asList(MediaType.parse("image/png")), "text/html"));
+    }
+
+    private static String best(String header, String... supported) {
+        List<MediaType> types = new ArrayList<>();
+        for (String type : supported) {
+            types.add(MediaType.parse(type));
+        }
+        MediaType best = MimeParse.bestMatch(types, Function.identity(), header);
+        return best != null ? best.value() : null;
+    }
+
+}
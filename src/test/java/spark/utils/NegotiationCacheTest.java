@@ -0,0 +1,54 @@
+package spark.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NegotiationCacheTest {
+
+    private final MediaType json = MediaType.parse("application/json");
+    private final MediaType html = MediaType.parse("text/html");
+
+    @Test
+    public void cachesResultsPerCandidatesAndHeader() {
+        NegotiationCache<MediaType> cache = new NegotiationCache<>();
+
+        assertSame(html, cache.bestMatch(asList(json, html), Function.identity(), "text/html"));
+        assertSame(html, cache.bestMatch(asList(json, html), Function.identity(), "text/html"));
+        assertSame(json, cache.bestMatch(asList(json, html), Function.identity(), "application/json"));
+        assertNull(cache.bestMatch(asList(json), Function.identity(), "text/html"));
+        assertNull(cache.bestMatch(asList(json), Function.identity(), "text/html"));
+
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(3, cache.stats().missCount());
+    }
+
+    @Test
+    public void boundsTheNumberOfCachedNegotiations() {
+        NegotiationCache<MediaType> cache = new NegotiationCache<>();
+        cache.maximumSize(10);
+        List<MediaType> candidates = asList(json, html);
+
+        for (int i = 0; i < 100; i++) {
+            cache.bestMatch(candidates, Function.identity(), "text/html;random=" + i);
+        }
+        assertTrue(cache.stats().evictionCount() >= 90);
+    }
+
+    @Test
+    public void negotiatesWithoutCachingWhenDisabled() {
+        NegotiationCache<MediaType> cache = new NegotiationCache<>();
+        cache.maximumSize(0);
+
+        assertSame(json, cache.bestMatch(asList(json, html), Function.identity(), "application/*"));
+        assertEquals(0, cache.stats().requestCount());
+    }
+
+}